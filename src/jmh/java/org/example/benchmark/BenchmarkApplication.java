@@ -0,0 +1,32 @@
+package org.example.benchmark;
+
+import org.example.Main;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/** Starts the application without the web server, scheduler or watcher, on a fresh in-memory database. */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        String name = UUID.randomUUID().toString();
+        List<String> all = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:bench-" + name + ";DB_CLOSE_DELAY=-1",
+                "app.input-dir=" + System.getProperty("java.io.tmpdir") + "/bench-input-" + name,
+                "app.initial-delay-ms=3600000",
+                "app.watch.enabled=false",
+                "logging.level.root=WARN"));
+        all.addAll(List.of(properties));
+        // as command line arguments, so they take precedence over application.properties
+        return new SpringApplicationBuilder(Main.class)
+                .web(WebApplicationType.NONE)
+                .run(all.stream().map(p -> "--" + p).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.benchmark;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Lock-free latency histogram in microseconds with logarithmic buckets of about 2% width. */
+final class LatencyHistogram {
+
+    private static final double GROWTH = Math.log(1.02);
+    private static final int BUCKETS = 1100;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long micros) {
+        counts.incrementAndGet(bucket(micros));
+    }
+
+    /** Moves all counts into {@code into} and leaves this histogram empty. */
+    void drainTo(LatencyHistogram into) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.getAndSet(i, 0);
+            if (n != 0) {
+                into.counts.addAndGet(i, n);
+            }
+        }
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /** Upper bound of the bucket holding the given percentile (0..100), or 0 when empty. */
+    long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return (long) Math.ceil(Math.exp((i + 1) * GROWTH));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int bucket(long micros) {
+        return micros <= 1 ? 0 : Math.min(BUCKETS - 1, (int) (Math.log(micros) / GROWTH));
+    }
+}
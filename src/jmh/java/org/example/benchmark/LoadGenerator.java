@@ -0,0 +1,101 @@
+package org.example.benchmark;
+
+import org.example.entities.XmlRootRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic request files shaped by {@link LoadShape}. Each file is written under a
+ * {@code .part} name and renamed, so a running application never sees half a file.
+ * <p>
+ * Run with {@code ./gradlew generateLoad -Dload.files=1000 -Dload.dir=input}.
+ */
+public class LoadGenerator {
+
+    private final LoadShape shape;
+    private final SyntheticRequests requests = SyntheticRequests.fromTemplate();
+    private final ZipfSampler insureds;
+    private final SplittableRandom random;
+    private int sequence;
+
+    LoadGenerator(LoadShape shape) {
+        this.shape = shape;
+        this.insureds = new ZipfSampler(shape.insureds, shape.skew);
+        this.random = new SplittableRandom(shape.seed);
+    }
+
+    ZipfSampler insureds() {
+        return insureds;
+    }
+
+    /** Writes one file and returns the number of products it holds (0 for a malformed file). */
+    long writeFile() throws IOException {
+        int events = logUniform(shape.eventsMin, shape.eventsMax);
+        int company = random.nextInt(shape.companies);
+        String sourceCompany = company == 0 ? requests.templateSourceCompany() : "Company-" + company;
+        int[] productsOf = new int[events];
+        long products = 0;
+        for (int i = 0; i < events; i++) {
+            productsOf[i] = shape.productsMin + random.nextInt(shape.productsMax - shape.productsMin + 1);
+            products += productsOf[i];
+        }
+        XmlRootRequest request = requests.request(events, i -> productsOf[i], i -> insureds.next(random), sourceCompany);
+
+        byte[] xml;
+        if (random.nextDouble() < shape.malformedRatio) {
+            xml = malformed(request);
+            products = 0;
+        } else {
+            xml = requests.xml(request);
+        }
+        Path target = shape.dir.resolve(String.format("load-%d-%06d.xml", shape.seed, sequence++));
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Files.write(part, xml);
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        return products;
+    }
+
+    private byte[] malformed(XmlRootRequest request) {
+        switch (random.nextInt(3)) {
+            case 0: {
+                // cut off mid-document
+                byte[] xml = requests.xml(request);
+                byte[] truncated = new byte[Math.max(1, xml.length / 2)];
+                System.arraycopy(xml, 0, truncated, 0, truncated.length);
+                return truncated;
+            }
+            case 1:
+                request.setRequestDetails(null);
+                return requests.xml(request);
+            default:
+                return "<root><requestDetails><id>broken".getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private int logUniform(int min, int max) {
+        if (min == max) {
+            return min;
+        }
+        double value = Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max + 1) - Math.log(min)));
+        return Math.min(max, (int) value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadShape shape = LoadShape.fromSystemProperties();
+        Files.createDirectories(shape.dir);
+        LoadGenerator generator = new LoadGenerator(shape);
+        long started = System.nanoTime();
+        long products = 0;
+        for (int i = 0; i < shape.files; i++) {
+            products += generator.writeFile();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Wrote %d files with %,d products to %s in %.1f s (%s)%n",
+                shape.files, products, shape.dir.toAbsolutePath(), seconds, shape);
+    }
+}
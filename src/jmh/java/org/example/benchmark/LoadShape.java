@@ -0,0 +1,59 @@
+package org.example.benchmark;
+
+import java.nio.file.Path;
+
+/**
+ * Shape of generated load, read from {@code load.*} system properties:
+ * <ul>
+ *     <li>{@code load.dir}: where files are written (default {@code input})</li>
+ *     <li>{@code load.files}: number of files (default 100)</li>
+ *     <li>{@code load.events-min}, {@code load.events-max}: events per file, log-uniform (default 1..200)</li>
+ *     <li>{@code load.products-min}, {@code load.products-max}: products per event, uniform (default 1..5)</li>
+ *     <li>{@code load.insureds}: number of distinct insuredIds (default 100000)</li>
+ *     <li>{@code load.skew}: Zipf exponent of the insuredId popularity, 0 for uniform (default 1.0)</li>
+ *     <li>{@code load.companies}: number of distinct source companies (default 3)</li>
+ *     <li>{@code load.malformed-ratio}: share of truncated or invalid files (default 0.01)</li>
+ *     <li>{@code load.seed}: random seed (default 42)</li>
+ * </ul>
+ */
+final class LoadShape {
+
+    final Path dir;
+    final int files;
+    final int eventsMin;
+    final int eventsMax;
+    final int productsMin;
+    final int productsMax;
+    final int insureds;
+    final double skew;
+    final int companies;
+    final double malformedRatio;
+    final long seed;
+
+    private LoadShape() {
+        dir = Path.of(System.getProperty("load.dir", "input"));
+        files = Integer.getInteger("load.files", 100);
+        eventsMin = Integer.getInteger("load.events-min", 1);
+        eventsMax = Integer.getInteger("load.events-max", 200);
+        productsMin = Integer.getInteger("load.products-min", 1);
+        productsMax = Integer.getInteger("load.products-max", 5);
+        insureds = Integer.getInteger("load.insureds", 100_000);
+        skew = Double.parseDouble(System.getProperty("load.skew", "1.0"));
+        companies = Integer.getInteger("load.companies", 3);
+        malformedRatio = Double.parseDouble(System.getProperty("load.malformed-ratio", "0.01"));
+        seed = Long.getLong("load.seed", 42L);
+        if (eventsMin < 1 || eventsMax < eventsMin || productsMin < 0 || productsMax < productsMin || insureds < 1 || companies < 1) {
+            throw new IllegalArgumentException("Inconsistent load shape: " + this);
+        }
+    }
+
+    static LoadShape fromSystemProperties() {
+        return new LoadShape();
+    }
+
+    @Override
+    public String toString() {
+        return "files=" + files + ", events=" + eventsMin + ".." + eventsMax + ", products=" + productsMin + ".." + productsMax
+                + ", insureds=" + insureds + ", skew=" + skew + ", companies=" + companies + ", malformed=" + malformedRatio;
+    }
+}
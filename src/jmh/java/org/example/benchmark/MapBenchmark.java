@@ -0,0 +1,55 @@
+package org.example.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.EventDto;
+import org.example.entities.EventEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.entities.XmlRootRequest;
+import org.example.service.IngestionMetrics;
+import org.example.service.ProductIdGenerator;
+import org.example.service.ProductsService;
+import org.example.service.RequestDetailsService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** DTOs to entities: RequestDetailsService.getRequestDetailsEntity and ProductsService.getProductEntities. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapBenchmark {
+
+    @Param({"100", "10000"})
+    int events;
+
+    @Param({"1", "5"})
+    int productsPerEvent;
+
+    private ProductsService productsService;
+    private RequestDetailsService requestDetailsService;
+    private XmlRootRequest root;
+    private EventEntity event;
+
+    @Setup
+    public void setUp() {
+        // only the mapping methods are exercised, which use none of the collaborators
+        IngestionMetrics metrics = new IngestionMetrics(new SimpleMeterRegistry());
+        productsService = new ProductsService(null, null, null, null, null, metrics, new ProductIdGenerator());
+        requestDetailsService = new RequestDetailsService(productsService, metrics);
+        root = SyntheticRequests.fromTemplate().request(events, productsPerEvent, Math.max(1, events / 10));
+        event = new EventEntity();
+    }
+
+    @Benchmark
+    public RequestDetailsEntity getRequestDetailsEntity() {
+        return requestDetailsService.getRequestDetailsEntity(root);
+    }
+
+    @Benchmark
+    public void getProductEntities(Blackhole bh) {
+        for (EventDto eventDto : root.getEvents()) {
+            bh.consume(productsService.getProductEntities(eventDto, event));
+        }
+    }
+}
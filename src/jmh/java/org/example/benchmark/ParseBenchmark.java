@@ -0,0 +1,59 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.example.config.ObjectMapperConfiguration;
+import org.example.dto.EventDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.entities.XmlRootRequest;
+import org.example.service.StreamingRequestReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** XML to DTOs: whole-document binding as in FileProcessorService, and event-by-event streaming. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+    @Param({"100", "10000"})
+    int events;
+
+    @Param({"1", "5"})
+    int productsPerEvent;
+
+    private XmlMapper xmlMapper;
+    private StreamingRequestReader streamingReader;
+    private byte[] xml;
+
+    @Setup
+    public void setUp() {
+        xmlMapper = new ObjectMapperConfiguration().xmlMapper();
+        streamingReader = new StreamingRequestReader(xmlMapper);
+        xml = SyntheticRequests.fromTemplate().xml(events, productsPerEvent, Math.max(1, events / 10));
+    }
+
+    @Benchmark
+    public XmlRootRequest bindDocument() throws IOException {
+        return xmlMapper.readValue(xml, XmlRootRequest.class);
+    }
+
+    @Benchmark
+    public boolean streamEvents(Blackhole bh) throws IOException {
+        return streamingReader.read(new ByteArrayInputStream(xml), 500, new StreamingRequestReader.Handler() {
+            @Override
+            public void onRequestDetails(RequestDetailsDto requestDetails) {
+                bh.consume(requestDetails);
+            }
+
+            @Override
+            public void onEvents(List<EventDto> chunk) {
+                bh.consume(chunk);
+            }
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.benchmark;
+
+import org.example.entities.RequestDetailsEntity;
+import org.example.service.RequestDetailsService;
+import org.example.service.RequestDetailsWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request written by RequestDetailsWriter in its own transaction, in jpa and jdbc mode and with
+ * random or time-ordered product ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PersistBenchmark {
+
+    @Param({"jpa", "jdbc"})
+    String mode;
+
+    @Param({"100", "2000"})
+    int events;
+
+    @Param({"1", "5"})
+    int productsPerEvent;
+
+    @Param({"random", "v7"})
+    String productIds;
+
+    private ConfigurableApplicationContext context;
+    private SyntheticRequests requests;
+    private RequestDetailsService mapper;
+    private RequestDetailsWriter writer;
+    private TransactionTemplate tx;
+    private RequestDetailsEntity next;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start("app.persistence.mode=" + mode, "app.persistence.product-ids=" + productIds);
+        requests = SyntheticRequests.fromTemplate();
+        mapper = context.getBean(RequestDetailsService.class);
+        writer = context.getBean(RequestDetailsWriter.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    // a new request each time, so every invocation inserts the same number of rows
+    @Setup(Level.Invocation)
+    public void nextRequest() {
+        next = mapper.getRequestDetailsEntity(requests.request(events, productsPerEvent, 1000));
+    }
+
+    @Benchmark
+    public Set<String> save() {
+        return tx.execute(s -> writer.save(next));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.benchmark;
+
+import org.example.service.ProductIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Inserting product keys into a file-backed H2 table: the former random UUID strings, random
+ * UUIDs stored as binary, and the time-ordered UUIDv7 ids of ProductIdGenerator. Random keys
+ * rewrite pages all over the primary-key index; the database file size per row is printed after
+ * each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ProductKeyBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"varchar-random", "uuid-random", "uuid-v7"})
+    String keys;
+
+    @Param({"250000"})
+    int rows;
+
+    private final ProductIdGenerator v7 = new ProductIdGenerator();
+    private Path directory;
+    private Connection connection;
+
+    @Setup(Level.Iteration)
+    public void createTable() throws IOException, SQLException {
+        directory = Files.createTempDirectory("product-keys");
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db"));
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table product (id " + (keys.startsWith("varchar") ? "varchar(255)" : "uuid")
+                    + " primary key, event_id varchar(255))");
+        }
+    }
+
+    @Benchmark
+    public void insert() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into product (id, event_id) values (?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                UUID id = keys.endsWith("v7") ? v7.next() : UUID.randomUUID();
+                if (keys.startsWith("varchar")) {
+                    ps.setString(1, id.toString());
+                } else {
+                    ps.setObject(1, id);
+                }
+                ps.setString(2, "event" + (i / 5));
+                ps.addBatch();
+                if (i % BATCH_SIZE == BATCH_SIZE - 1) {
+                    ps.executeBatch();
+                    connection.commit();
+                }
+            }
+            ps.executeBatch();
+            connection.commit();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropDatabase() throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("checkpoint sync");
+        }
+        Path file = directory.resolve("db.mv.db");
+        System.out.printf("%ndatabase file: %.1f bytes/row%n", (double) Files.size(file) / rows);
+        connection.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+}
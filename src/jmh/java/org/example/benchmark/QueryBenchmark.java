@@ -0,0 +1,75 @@
+package org.example.benchmark;
+
+import org.example.service.InsuredProductsChangedEvent;
+import org.example.service.ProductsService;
+import org.example.service.RequestDetailsService;
+import org.example.service.RequestDetailsWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of ProductsService.getProductsByInsured for a random stored insured, served from the
+ * projection or the live join, with and without the response cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+    private static final int EVENTS_PER_REQUEST = 1000;
+
+    @Param({"true", "false"})
+    boolean projection;
+
+    @Param({"0", "10000"})
+    int cacheEntries;
+
+    @Param({"1000"})
+    int insureds;
+
+    @Param({"20"})
+    int eventsPerInsured;
+
+    @Param({"5"})
+    int productsPerEvent;
+
+    private ConfigurableApplicationContext context;
+    private ProductsService productsService;
+
+    @Setup(Level.Trial)
+    public void load() {
+        context = BenchmarkApplication.start(
+                "app.projection.enabled=" + projection,
+                "app.cache.products.max-entries=" + cacheEntries);
+        SyntheticRequests requests = SyntheticRequests.fromTemplate();
+        RequestDetailsService mapper = context.getBean(RequestDetailsService.class);
+        RequestDetailsWriter writer = context.getBean(RequestDetailsWriter.class);
+        TransactionTemplate tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        for (int loaded = 0; loaded < insureds * eventsPerInsured; loaded += EVENTS_PER_REQUEST) {
+            tx.executeWithoutResult(s -> {
+                Set<String> touched = writer.save(mapper.getRequestDetailsEntity(
+                        requests.request(EVENTS_PER_REQUEST, productsPerEvent, insureds)));
+                context.publishEvent(new InsuredProductsChangedEvent(touched));
+            });
+        }
+        productsService = context.getBean(ProductsService.class);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getProductsByInsured() {
+        String insuredId = SyntheticRequests.insuredId(ThreadLocalRandom.current().nextInt(insureds));
+        return productsService.getProductsByInsured(insuredId, null, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.example.config.ObjectMapperConfiguration;
+import org.example.dto.EventDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.entities.XmlRootRequest;
+import org.example.service.FileInput;
+import org.example.service.StreamingRequestReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File to DTOs through each FileInput path: a plain stream, the per-thread buffer and a memory
+ * mapping. Small files are bound as a whole document, large ones streamed as in
+ * FileProcessorService; {@code drain} only reads the bytes. The file stays in the page cache, so
+ * this measures the read path, not the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadBenchmark {
+
+    @Param({"100", "200000"})
+    int events;
+
+    @Param({"stream", "buffer", "mmap"})
+    String input;
+
+    private XmlMapper xmlMapper;
+    private StreamingRequestReader streamingReader;
+    private Path file;
+    private long size;
+
+    @Setup
+    public void setUp() throws IOException {
+        xmlMapper = new ObjectMapperConfiguration().xmlMapper();
+        streamingReader = new StreamingRequestReader(xmlMapper);
+        file = Files.createTempFile("read-benchmark", ".xml");
+        Files.write(file, SyntheticRequests.fromTemplate().xml(events, 2, Math.max(1, events / 10)));
+        size = Files.size(file);
+        System.out.printf("%nfile: %d bytes%n", size);
+    }
+
+    @TearDown
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    private InputStream open() throws IOException {
+        return switch (input) {
+            case "buffer" -> FileInput.open(file, size, Integer.MAX_VALUE - 8, 0);
+            case "mmap" -> FileInput.open(file, size, 0, 1);
+            default -> FileInput.open(file, size, 0, 0);
+        };
+    }
+
+    /** Only the reads, in chunks the size of the parser's input buffer. */
+    @Benchmark
+    public long drain() throws IOException {
+        byte[] chunk = new byte[4000];
+        long total = 0;
+        try (InputStream is = open()) {
+            int n;
+            while ((n = is.read(chunk)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Object read(Blackhole bh) throws IOException {
+        try (InputStream is = open()) {
+            if (events <= 1000) {
+                return xmlMapper.readValue(is, XmlRootRequest.class);
+            }
+            return streamingReader.read(is, 500, new StreamingRequestReader.Handler() {
+                @Override
+                public void onRequestDetails(RequestDetailsDto requestDetails) {
+                    bh.consume(requestDetails);
+                }
+
+                @Override
+                public void onEvents(List<EventDto> chunk) {
+                    bh.consume(chunk);
+                }
+            });
+        }
+    }
+}
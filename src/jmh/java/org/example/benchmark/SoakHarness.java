@@ -0,0 +1,214 @@
+package org.example.benchmark;
+
+import org.example.Main;
+import org.example.service.FileBatchProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end soak: runs the application on a file-based H2 database, writes synthetic files into
+ * its input directory at a fixed rate, drives {@link FileBatchProcessor} continuously and queries
+ * {@code /api/products/{insuredId}} from several threads, with insuredIds drawn from the same
+ * distribution as the files.
+ * <p>
+ * Every {@code soak.report-interval} it prints and appends to {@code <soak.dir>/soak.csv}: files/s,
+ * products/s, backlog, API p50/p99/max, API status counts, heap used and GC count/time. Settings
+ * are {@code soak.*} and {@code load.*} system properties (see {@link LoadShape}); arguments are
+ * passed to the application, e.g. {@code --app.ingest.parallelism=4}.
+ * <p>
+ * Run with {@code ./gradlew soak -Dsoak.duration=PT4H -Dsoak.files-per-second=20}.
+ */
+public class SoakHarness {
+
+    public static void main(String[] args) throws Exception {
+        Duration duration = Duration.parse(System.getProperty("soak.duration", "PT10M"));
+        Duration reportInterval = Duration.parse(System.getProperty("soak.report-interval", "PT1M"));
+        double filesPerSecond = Double.parseDouble(System.getProperty("soak.files-per-second", "5"));
+        int queryThreads = Integer.getInteger("soak.query-threads", 4);
+        Path dir = Path.of(System.getProperty("soak.dir", "build/soak")).toAbsolutePath();
+
+        Path input = dir.resolve("input");
+        deleteRecursively(dir);
+        Files.createDirectories(input);
+        System.setProperty("load.dir", input.toString());
+        LoadShape shape = LoadShape.fromSystemProperties();
+        LoadGenerator generator = new LoadGenerator(shape);
+
+        List<String> appArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--app.input-dir=" + input,
+                "--app.backup-dir=" + dir.resolve("backup"),
+                "--spring.datasource.url=jdbc:h2:file:" + dir.resolve("db/soak"),
+                "--app.initial-delay-ms=" + Duration.ofDays(365).toMillis(),
+                "--app.watch.enabled=false",
+                "--logging.level.org.example=WARN"));
+        appArgs.addAll(List.of(args));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class).run(appArgs.toArray(new String[0]));
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/products/";
+        FileBatchProcessor processor = context.getBean(FileBatchProcessor.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong generated = new AtomicLong();
+        ScheduledExecutorService timers = Executors.newScheduledThreadPool(2);
+        timers.scheduleAtFixedRate(() -> {
+            try {
+                generator.writeFile();
+                generated.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("Cannot write load file: " + e);
+            }
+        }, 0, (long) (1_000_000 / filesPerSecond), TimeUnit.MICROSECONDS);
+
+        Thread ingest = new Thread(() -> {
+            while (running.get()) {
+                processor.processFiles();
+                if (countFiles(input) == 0) {
+                    sleep(100);
+                }
+            }
+        }, "soak-ingest");
+        ingest.start();
+
+        LatencyHistogram interval = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        LongAdder ok = new LongAdder();
+        LongAdder notFound = new LongAdder();
+        LongAdder failed = new LongAdder();
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        List<Thread> queries = new ArrayList<>();
+        for (int t = 0; t < queryThreads; t++) {
+            Thread query = new Thread(() -> {
+                while (running.get()) {
+                    String insuredId = SyntheticRequests.insuredId(generator.insureds().next(ThreadLocalRandom.current()));
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + insuredId)).timeout(Duration.ofSeconds(30)).build();
+                    long started = System.nanoTime();
+                    try {
+                        int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        interval.record((System.nanoTime() - started) / 1000);
+                        (status == 200 ? ok : status == 404 ? notFound : failed).increment();
+                    } catch (IOException e) {
+                        failed.increment();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "soak-query-" + t);
+            query.start();
+            queries.add(query);
+        }
+
+        Path csv = dir.resolve("soak.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv))) {
+            String header = "elapsed_s,files_per_s,products_per_s,backlog,api_req,api_p50_us,api_p99_us,api_max_us,api_ok,api_404,api_failed,heap_used_mb,heap_max_mb,gc_count,gc_time_ms";
+            out.println(header);
+            System.out.println("Soak " + duration + " at " + filesPerSecond + " files/s, " + queryThreads + " query threads, " + shape);
+            System.out.println(header);
+            long start = System.nanoTime();
+            long deadline = start + duration.toNanos();
+            long lastAt = start;
+            long lastProcessed = 0;
+            long lastProducts = 0;
+            long[] lastGc = gc();
+            while (System.nanoTime() < deadline) {
+                sleep(Math.min(reportInterval.toMillis(), Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+                long now = System.nanoTime();
+                double seconds = (now - lastAt) / 1e9;
+                long backlog = countFiles(input);
+                long processed = generated.get() - backlog;
+                long products = jdbc.queryForObject("select count(*) from product", Long.class);
+                LatencyHistogram snapshot = new LatencyHistogram();
+                interval.drainTo(snapshot);
+                long[] gcNow = gc();
+                var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                String line = String.format("%d,%.1f,%.0f,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d",
+                        (now - start) / 1_000_000_000, (processed - lastProcessed) / seconds, (products - lastProducts) / seconds,
+                        backlog, snapshot.count(), snapshot.percentile(50), snapshot.percentile(99), snapshot.percentile(100),
+                        ok.sumThenReset(), notFound.sumThenReset(), failed.sumThenReset(),
+                        heap.getUsed() >> 20, heap.getMax() >> 20, gcNow[0] - lastGc[0], gcNow[1] - lastGc[1]);
+                out.println(line);
+                out.flush();
+                System.out.println(line);
+                snapshot.drainTo(total);
+                lastAt = now;
+                lastProcessed = processed;
+                lastProducts = products;
+                lastGc = gcNow;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long[] gcEnd = gc();
+            System.out.printf("Total: %.0f s, %d files (%.1f/s), %,d products (%.0f/s), API %d requests p50 %d us p99 %d us, GC %d collections %d ms; CSV %s%n",
+                    seconds, lastProcessed, lastProcessed / seconds, lastProducts, lastProducts / seconds,
+                    total.count(), total.percentile(50), total.percentile(99), gcEnd[0], gcEnd[1], csv);
+        } finally {
+            running.set(false);
+            timers.shutdownNow();
+            for (Thread query : queries) {
+                query.interrupt();
+            }
+            ingest.join(TimeUnit.MINUTES.toMillis(1));
+            context.close();
+        }
+    }
+
+    /** Total collections and collection time in ms over all collectors. */
+    private static long[] gc() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static long countFiles(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".xml")).count();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.example.config.ObjectMapperConfiguration;
+import org.example.dto.EventDto;
+import org.example.dto.ProductDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.entities.XmlRootRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Builds requests of any size from the events and products of a sample file (by default
+ * {@code input/Request.xml}, or the {@code benchmark.template} system property). Templates are
+ * reused round-robin; every request and event gets a fresh id and events are spread over
+ * {@code insureds} insuredIds.
+ */
+public final class SyntheticRequests {
+
+    private final XmlMapper xmlMapper = new ObjectMapperConfiguration().xmlMapper();
+    private final XmlRootRequest template;
+    private final List<ProductDto> productTemplates = new ArrayList<>();
+
+    private SyntheticRequests(XmlRootRequest template) {
+        this.template = template;
+        for (EventDto event : template.getEvents()) {
+            if (event.getProducts() != null) {
+                productTemplates.addAll(event.getProducts());
+            }
+        }
+        if (template.getEvents().isEmpty() || productTemplates.isEmpty()) {
+            throw new IllegalArgumentException("Template needs at least one event with products");
+        }
+    }
+
+    public static SyntheticRequests fromTemplate() {
+        Path path = Path.of(System.getProperty("benchmark.template", "input/Request.xml"));
+        try {
+            return new SyntheticRequests(new ObjectMapperConfiguration().xmlMapper()
+                    .readValue(Files.readAllBytes(path), XmlRootRequest.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read benchmark template " + path.toAbsolutePath(), e);
+        }
+    }
+
+    public XmlRootRequest request(int events, int productsPerEvent, int insureds) {
+        return request(events, i -> productsPerEvent, i -> i % insureds, template.getRequestDetails().getSourceCompany());
+    }
+
+    /**
+     * @param productsOf number of products of the i-th event
+     * @param insuredOf  insured number (see {@link #insuredId}) of the i-th event
+     */
+    public XmlRootRequest request(int events, IntUnaryOperator productsOf, IntUnaryOperator insuredOf, String sourceCompany) {
+        RequestDetailsDto details = new RequestDetailsDto();
+        details.setId(UUID.randomUUID().toString());
+        details.setAcceptDate(template.getRequestDetails().getAcceptDate());
+        details.setSourceCompany(sourceCompany);
+
+        List<EventDto> eventDtos = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            EventDto like = template.getEvents().get(i % template.getEvents().size());
+            EventDto event = new EventDto();
+            event.setId(UUID.randomUUID().toString());
+            event.setType(like.getType());
+            event.setInsuredId(insuredId(insuredOf.applyAsInt(i)));
+            int productCount = productsOf.applyAsInt(i);
+            List<ProductDto> products = new ArrayList<>(productCount);
+            for (int j = 0; j < productCount; j++) {
+                products.add(productTemplates.get((i + j) % productTemplates.size()));
+            }
+            event.setProducts(products);
+            eventDtos.add(event);
+        }
+
+        XmlRootRequest root = new XmlRootRequest();
+        root.setRequestDetails(details);
+        root.setEvents(eventDtos);
+        return root;
+    }
+
+    public byte[] xml(int events, int productsPerEvent, int insureds) {
+        return xml(request(events, productsPerEvent, insureds));
+    }
+
+    public byte[] xml(XmlRootRequest request) {
+        try {
+            return xmlMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String templateSourceCompany() {
+        return template.getRequestDetails().getSourceCompany();
+    }
+
+    public static String insuredId(int n) {
+        return String.format("%08d", n);
+    }
+}
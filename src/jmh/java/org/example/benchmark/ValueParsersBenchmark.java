@@ -0,0 +1,80 @@
+package org.example.benchmark;
+
+import org.example.service.ValueParsers;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/** ValueParsers against the JDK parsing with try/catch it replaced, on valid and malformed values. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueParsersBenchmark {
+
+    private static final DateTimeFormatter ACCEPT_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSSSS");
+
+    @Param({"valid", "invalid"})
+    String values;
+
+    private String price;
+    private String date;
+    private String dateTime;
+
+    @Setup
+    public void setUp() {
+        boolean valid = "valid".equals(values);
+        price = valid ? "1234.50" : "1,234.50";
+        date = valid ? "2024-05-30" : "30/05/2024";
+        dateTime = valid ? "2021-05-18 13:07:38.022000000" : "18/05/2021 13:07";
+    }
+
+    @Benchmark
+    public BigDecimal decimal() {
+        return ValueParsers.parseDecimal(price);
+    }
+
+    @Benchmark
+    public BigDecimal decimalJdk() {
+        try {
+            return new BigDecimal(price);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public LocalDate date() {
+        return ValueParsers.parseDate(date);
+    }
+
+    @Benchmark
+    public LocalDate dateJdk() {
+        try {
+            return LocalDate.parse(date);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public LocalDateTime dateTime() {
+        return ValueParsers.parseDateTime(dateTime);
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeJdk() {
+        try {
+            return LocalDateTime.parse(dateTime, ACCEPT_DATE);
+        } catch (Exception ex) {
+            try {
+                return LocalDateTime.parse(dateTime);
+            } catch (Exception ex2) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.benchmark;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/** Draws 0..n-1 where value k has weight 1/(k+1)^skew; a skew of 0 is uniform. Thread-safe. */
+final class ZipfSampler {
+
+    private final int n;
+    private final double[] cdf;
+
+    ZipfSampler(int n, double skew) {
+        this.n = n;
+        if (skew <= 0) {
+            cdf = null;
+            return;
+        }
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    int next(RandomGenerator random) {
+        if (cdf == null) {
+            return random.nextInt(n);
+        }
+        int k = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(n - 1, k >= 0 ? k : -k - 1);
+    }
+}
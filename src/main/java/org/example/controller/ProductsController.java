@@ -1,18 +1,27 @@
 package org.example.controller;
 
 import org.example.domain.CompanyGroup;
+import org.example.domain.InsuredProductsPage;
 import org.example.domain.InsuredProductsResponse;
+import org.example.domain.ProductFilter;
 import org.example.domain.ProductResponse;
 import org.example.entities.EventEntity;
 import org.example.entities.ProductEntity;
 import org.example.repository.EventRepository;
 import org.example.service.ProductsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -22,13 +31,68 @@ import java.util.stream.Collectors;
 public class ProductsController {
     private final ProductsService productsService;
 
+    @Value("${app.products.batch-max-ids:10000}")
+    private int batchMaxIds;
+
+    @Value("${app.products.page-max-size:1000}")
+    private int pageMaxSize;
+
     public ProductsController(ProductsService productsService) {
         this.productsService = productsService;
     }
 
     @GetMapping(value = "/{insuredId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getProductsByInsured(@PathVariable String insuredId) {
-        return productsService.getProductsByInsured(insuredId);
+    public ResponseEntity<byte[]> getProductsByInsured(@PathVariable String insuredId,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return productsService.getProductsByInsured(insuredId, ifNoneMatch, acceptsGzip(acceptEncoding));
+    }
+
+    /** A filtered page of an insured's products; follow {@code nextCursor} for the next one. */
+    @GetMapping(value = "/{insuredId}/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<InsuredProductsPage> getProductsPage(@PathVariable String insuredId,
+                                                               ProductFilter filter,
+                                                               @RequestParam(required = false) String cursor,
+                                                               @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > pageMaxSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        return productsService.getProductsPage(insuredId, filter, cursor, limit);
+    }
+
+    /** Products of many insureds in one round trip, streamed as a JSON array. */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getProductsBatch(@RequestBody List<String> insuredIds) {
+        return streamBatch(insuredIds, false);
+    }
+
+    /** Same as {@link #getProductsBatch}, one JSON document per line. */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getProductsBatchNdjson(@RequestBody List<String> insuredIds) {
+        return streamBatch(insuredIds, true);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamBatch(List<String> insuredIds, boolean ndjson) {
+        if (insuredIds.size() > batchMaxIds) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(out -> productsService.writeProductsBatch(insuredIds, ndjson, out));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                // "gzip;q=0" explicitly refuses it
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 
 
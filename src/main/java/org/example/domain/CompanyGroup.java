@@ -2,10 +2,12 @@ package org.example.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class CompanyGroup {
     public String sourceCompany;
     public List<ProductResponse> products;
@@ -0,0 +1,24 @@
+package org.example.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One (sourceCompany, product, eventId) tuple of an insured, as read by the products query.
+ * Product fields are null for an event without products.
+ */
+@Data
+@AllArgsConstructor
+public class InsuredProductRow {
+    public String insuredId;
+    public String sourceCompany;
+    public String productId;
+    public String type;
+    public BigDecimal price;
+    public LocalDate startDate;
+    public LocalDate endDate;
+    public String eventId;
+}
@@ -0,0 +1,20 @@
+package org.example.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of an insured's products grouped by SourceCompany. Pass {@code nextCursor} back as
+ * {@code cursor} for the following page; it is null on the last one.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InsuredProductsPage {
+    public String insuredId;
+    public List<CompanyGroup> groups;
+    public String nextCursor;
+}
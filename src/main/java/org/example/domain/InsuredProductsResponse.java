@@ -2,10 +2,12 @@ package org.example.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public  class InsuredProductsResponse {
     public String insuredId;
     public List<CompanyGroup> groups;
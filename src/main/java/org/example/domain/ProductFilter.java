@@ -0,0 +1,19 @@
+package org.example.domain;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/** Optional restrictions on an insured's products; null fields do not filter. */
+@Data
+public class ProductFilter {
+    public String sourceCompany;
+    public String type;
+    // products whose startDate..endDate range contains this day; an open end counts as active
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    public LocalDate activeOn;
+    public BigDecimal minPrice;
+    public BigDecimal maxPrice;
+}
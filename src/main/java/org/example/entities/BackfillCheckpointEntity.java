@@ -0,0 +1,29 @@
+package org.example.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a backfill of one backup directory: the last file committed, in the order files
+ * are replayed (modification time, then path), and the number of files handled. Written in the
+ * same transaction as the files; which files were replayed is kept in {@link BackfillFileEntity}.
+ */
+@Entity
+@Table(name = "backfill_checkpoint")
+@Data
+public class BackfillCheckpointEntity {
+    @Id
+    @Column(name = "source_dir", length = 1024)
+    private String sourceDir;
+
+    private long lastModified;
+
+    @Column(length = 1024)
+    private String lastFile;
+
+    private long files;
+
+    private LocalDateTime updatedAt;
+}
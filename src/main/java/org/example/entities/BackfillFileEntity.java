@@ -0,0 +1,42 @@
+package org.example.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * A backup file a backfill has replayed, or skipped as a duplicate, with the size and modification
+ * time it had then. Written in the same transaction as the file, so a later backfill of the
+ * directory replays exactly the files that are not listed here or have changed since.
+ */
+@Entity
+@Table(name = "backfill_file")
+@IdClass(BackfillFileEntity.Key.class)
+@Data
+public class BackfillFileEntity {
+    @Id
+    @Column(name = "source_dir", length = 1024)
+    private String sourceDir;
+
+    // path relative to source_dir
+    @Id
+    @Column(length = 1024)
+    private String name;
+
+    private long size;
+
+    private long lastModified;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String sourceDir;
+        private String name;
+    }
+}
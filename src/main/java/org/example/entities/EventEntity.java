@@ -6,7 +6,10 @@ import lombok.Data;
 import java.util.List;
 
 @Entity
-@Table(name = "event")
+@Table(name = "event", indexes = {
+        @Index(name = "idx_event_insured_id", columnList = "insured_id"),
+        @Index(name = "idx_event_request_id", columnList = "request_id")
+})
 @Data
 public class EventEntity {
     @Id
@@ -14,6 +17,7 @@ public class EventEntity {
 
     private String type;
 
+    @Column(name = "insured_id")
     private String insuredId;
 
     @ManyToOne
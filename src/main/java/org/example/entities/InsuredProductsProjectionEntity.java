@@ -0,0 +1,27 @@
+package org.example.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Denormalized read model: the UTF-8 JSON of an insured's products grouped by source company and
+ * its ETag, kept in step with request_details/event/product by ingestion.
+ */
+@Entity
+@Table(name = "insured_products_projection")
+@Data
+public class InsuredProductsProjectionEntity {
+    @Id
+    @Column(name = "insured_id")
+    private String insuredId;
+
+    @Lob
+    private byte[] payload;
+
+    @Column(length = 34)
+    private String etag;
+
+    private LocalDateTime updatedAt;
+}
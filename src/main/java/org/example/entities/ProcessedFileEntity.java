@@ -0,0 +1,28 @@
+package org.example.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ledger of ingested files: the SHA-256 of the file that last wrote each request. A file whose
+ * hash is here is the request's current content and needs no processing.
+ */
+@Entity
+@Table(name = "processed_file", indexes = @Index(name = "idx_processed_file_content_hash", columnList = "content_hash"))
+@Data
+public class ProcessedFileEntity {
+    @Id
+    @Column(name = "request_id")
+    private String requestId;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    private String fileName;
+
+    private long size;
+
+    private LocalDateTime processedAt;
+}
@@ -5,13 +5,17 @@ import lombok.Data;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.UUID;
 
 @Entity
-@Table(name = "product")
+@Table(name = "product", indexes = {
+        @Index(name = "idx_product_event_id", columnList = "event_id"),
+        @Index(name = "idx_product_insured_id_id", columnList = "insured_id, id")
+})
 @Data
 public class ProductEntity {
     @Id
-    private String id;
+    private UUID id;
 
     private String type;
 
@@ -21,6 +25,10 @@ public class ProductEntity {
 
     private LocalDate endDate;
 
+    // copy of the event's insuredId, so a page of an insured's products is a range of one index
+    @Column(name = "insured_id")
+    private String insuredId;
+
     @ManyToOne
     @JoinColumn(name = "event_id")
     private EventEntity event;
@@ -0,0 +1,7 @@
+package org.example.repository;
+
+import org.example.entities.BackfillCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BackfillCheckpointRepository extends JpaRepository<BackfillCheckpointEntity, String> {
+}
@@ -0,0 +1,18 @@
+package org.example.repository;
+
+import org.example.entities.BackfillFileEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface BackfillFileRepository extends JpaRepository<BackfillFileEntity, BackfillFileEntity.Key> {
+
+    List<BackfillFileEntity> findBySourceDir(String sourceDir);
+
+    @Modifying
+    @Query("delete from BackfillFileEntity f where f.sourceDir = :sourceDir")
+    int deleteBySourceDir(@Param("sourceDir") String sourceDir);
+}
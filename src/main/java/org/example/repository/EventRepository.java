@@ -1,9 +1,29 @@
 package org.example.repository;
 
+import org.example.domain.InsuredProductRow;
 import org.example.entities.EventEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 import java.util.List;
 
 public interface EventRepository extends JpaRepository<EventEntity, String> {
-    List<EventEntity> findByInsuredId(String insuredId);
+
+    @Query("select new org.example.domain.InsuredProductRow(e.insuredId, rd.sourceCompany, cast(p.id as String), p.type, p.price, p.startDate, p.endDate, e.id) "
+            + "from EventEntity e left join e.requestDetails rd left join e.products p "
+            + "where e.insuredId = :insuredId")
+    List<InsuredProductRow> findProductRowsByInsuredId(@Param("insuredId") String insuredId);
+
+    @Query("select new org.example.domain.InsuredProductRow(e.insuredId, rd.sourceCompany, cast(p.id as String), p.type, p.price, p.startDate, p.endDate, e.id) "
+            + "from EventEntity e left join e.requestDetails rd left join e.products p "
+            + "where e.insuredId in :insuredIds")
+    List<InsuredProductRow> findProductRowsByInsuredIdIn(@Param("insuredIds") Collection<String> insuredIds);
+
+    boolean existsByInsuredId(String insuredId);
+
+    @Query("select distinct e.insuredId from EventEntity e where e.insuredId > :after order by e.insuredId")
+    List<String> findInsuredIdsAfter(@Param("after") String after, Pageable page);
 }
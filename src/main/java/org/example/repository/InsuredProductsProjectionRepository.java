@@ -0,0 +1,25 @@
+package org.example.repository;
+
+import org.example.entities.InsuredProductsProjectionEntity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface InsuredProductsProjectionRepository extends JpaRepository<InsuredProductsProjectionEntity, String> {
+
+    @Modifying
+    @Query("delete from InsuredProductsProjectionEntity p "
+            + "where p.insuredId not in (select e.insuredId from EventEntity e where e.insuredId is not null)")
+    int deleteWithoutEvents();
+
+    /** The existing rows, locked until the transaction ends, in a fixed order so that lockers do not deadlock. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from InsuredProductsProjectionEntity p where p.insuredId in :insuredIds order by p.insuredId")
+    List<InsuredProductsProjectionEntity> lockAllById(@Param("insuredIds") Collection<String> insuredIds);
+}
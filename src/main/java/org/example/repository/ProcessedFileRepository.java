@@ -0,0 +1,19 @@
+package org.example.repository;
+
+import org.example.entities.ProcessedFileEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+public interface ProcessedFileRepository extends JpaRepository<ProcessedFileEntity, String> {
+
+    boolean existsByContentHash(String contentHash);
+
+    // flushed first, so a ledger row saved earlier in the same transaction is deleted too
+    @Modifying(flushAutomatically = true)
+    @Query("delete from ProcessedFileEntity f where f.requestId in :requestIds")
+    int deleteByRequestIdIn(@Param("requestIds") Collection<String> requestIds);
+}
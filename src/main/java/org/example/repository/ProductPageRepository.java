@@ -0,0 +1,65 @@
+package org.example.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import org.example.domain.InsuredProductRow;
+import org.example.domain.ProductFilter;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads an insured's products in pages ordered by product id. Only the predicates of the filter
+ * fields that are set are added to the query, and the database applies every filter itself. The
+ * page boundary is {@code p.id > :after} (keyset) rather than an OFFSET, and product rows carry
+ * their event's insured_id with an index on {@code (insured_id, id)}, so a page is read as one
+ * index range in id order and later pages cost the same as the first.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductPageRepository {
+
+    private final EntityManager entityManager;
+
+    public List<InsuredProductRow> findPage(String insuredId, ProductFilter filter, UUID after, int limit) {
+        StringBuilder jpql = new StringBuilder(
+                "select new org.example.domain.InsuredProductRow(e.insuredId, rd.sourceCompany, cast(p.id as String), p.type, p.price, p.startDate, p.endDate, e.id) "
+                        + "from ProductEntity p join p.event e left join e.requestDetails rd "
+                        + "where p.insuredId = :insuredId");
+        Map<String, Object> params = new HashMap<>();
+        params.put("insuredId", insuredId);
+        if (filter.getSourceCompany() != null) {
+            jpql.append(" and rd.sourceCompany = :sourceCompany");
+            params.put("sourceCompany", filter.getSourceCompany());
+        }
+        if (filter.getType() != null) {
+            jpql.append(" and p.type = :type");
+            params.put("type", filter.getType());
+        }
+        if (filter.getActiveOn() != null) {
+            jpql.append(" and p.startDate <= :activeOn and (p.endDate is null or p.endDate >= :activeOn)");
+            params.put("activeOn", filter.getActiveOn());
+        }
+        if (filter.getMinPrice() != null) {
+            jpql.append(" and p.price >= :minPrice");
+            params.put("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            jpql.append(" and p.price <= :maxPrice");
+            params.put("maxPrice", filter.getMaxPrice());
+        }
+        if (after != null) {
+            jpql.append(" and p.id > :after");
+            params.put("after", after);
+        }
+        jpql.append(" order by p.id");
+
+        TypedQuery<InsuredProductRow> query = entityManager.createQuery(jpql.toString(), InsuredProductRow.class);
+        params.forEach(query::setParameter);
+        return query.setMaxResults(limit).getResultList();
+    }
+}
@@ -0,0 +1,433 @@
+package org.example.service;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entities.BackfillCheckpointEntity;
+import org.example.entities.BackfillFileEntity;
+import org.example.entities.EventEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.entities.XmlRootRequest;
+import org.example.repository.BackfillCheckpointRepository;
+import org.example.repository.BackfillFileRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Re-ingests every {@code *.xml} (or archived {@code *.xml.gz}) under {@code app.backup-dir} at
+ * startup, for migrations and rebuilds: {@code --app.backfill.enabled=true}, plus
+ * {@code --app.backfill.exit=true} to stop the application afterwards.
+ * <p>
+ * The backfill runs once all beans are created but before the scheduler, the input directory
+ * watcher and the web server start, so live files are only ingested after the older copies in the
+ * backup directory have been replayed. Other nodes of a cluster cannot be held back that way, so
+ * with {@code app.cluster.enabled} it is refused unless {@code app.backfill.exit} marks a
+ * one-off run while ingestion is stopped.
+ * <p>
+ * Files are replayed oldest first (modification time, then path) so later versions of a request
+ * win. They are read, hashed, parsed and mapped on {@code app.backfill.threads} workers, while
+ * this thread writes them in order, {@code app.backfill.files-per-commit} files per transaction.
+ * No per-file events are published: the products projection is rebuilt and the products cache
+ * cleared once at the end, so reads may be stale while a backfill runs. Files
+ * above {@code app.ingest.streaming-threshold-bytes} are streamed in a transaction of their own.
+ * <p>
+ * Each transaction also records the files it replayed in {@code backfill_file}, so an interrupted
+ * backfill resumes after the last commit and a later run only replays files that were added or
+ * changed since, whatever their modification time; {@code backfill_checkpoint} keeps the last
+ * file and the count for monitoring. {@code app.backfill.reset=true} starts over. Files whose request already holds the same content
+ * (see {@link ProcessedFileLedger}) are skipped; a batch that fails is retried file by file.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BackfillRunner implements SmartInitializingSingleton, ApplicationRunner {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 10_000_000_000L;
+    private static final int SAVED = 0;
+    private static final int DUPLICATE = 1;
+    private static final int FAILED = 2;
+
+    private final RequestDetailsService requestDetailsService;
+    private final RequestDetailsWriter requestDetailsWriter;
+    private final FileProcessorService fileProcessorService;
+    private final ProcessedFileLedger ledger;
+    private final BackfillCheckpointRepository checkpointRepository;
+    private final BackfillFileRepository replayedRepository;
+    private final InsuredProductsProjectionService projectionService;
+    private final InsuredProductsProjectionRebuilder projectionRebuilder;
+    private final InsuredProductsCache cache;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationContext applicationContext;
+
+    private final XmlMapper xmlMapper = XmlMapper.builder().addModule(new JavaTimeModule()).build();
+
+    @Value("${app.backfill.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.backfill.exit:false}")
+    private boolean exitWhenDone;
+
+    @Value("${app.backfill.reset:false}")
+    private boolean reset;
+
+    // 0 uses every core
+    @Value("${app.backfill.threads:0}")
+    private int threads;
+
+    @Value("${app.backfill.files-per-commit:50}")
+    private int filesPerCommit;
+
+    @Value("${app.backup-dir:backup}")
+    private String backupDir;
+
+    @Value("${app.ingest.streaming-threshold-bytes:16777216}")
+    private long streamingThresholdBytes;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean clustered;
+
+    private boolean succeeded = true;
+
+    private record BackupFile(Path path, String name, long lastModified, long size) {
+    }
+
+    /** A file read and mapped by a worker; {@code request} is null when it is streamed or failed. */
+    private record Prepared(BackupFile file, RequestDetailsEntity request, String contentHash, String error) {
+
+        boolean streamed() {
+            return request == null && error == null;
+        }
+    }
+
+    private static final class Progress {
+        private final int total;
+        private final long started = System.nanoTime();
+        private long lastReport = started;
+        private int done;
+        private int saved;
+        private int duplicates;
+        private int failed;
+        private long events;
+        private long products;
+
+        private Progress(int total) {
+            this.total = total;
+        }
+
+        void report(boolean force) {
+            long now = System.nanoTime();
+            if (!force && now - lastReport < PROGRESS_INTERVAL_NANOS) {
+                return;
+            }
+            lastReport = now;
+            double seconds = Math.max(1e-9, (now - started) / 1e9);
+            log.info("Backfill: {}/{} files ({} saved, {} duplicate, {} failed), {} events, {} products, {} files/s",
+                    done, total, saved, duplicates, failed, events, products, Math.round(done / seconds));
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        if (clustered && !exitWhenDone) {
+            log.error("Backfill refused: other nodes of the cluster would keep ingesting live files while older "
+                    + "copies are replayed. Stop ingestion and run it with app.backfill.exit=true");
+            succeeded = false;
+            return;
+        }
+        try {
+            succeeded = backfill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Backfill interrupted", e);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled && exitWhenDone) {
+            int exitCode = succeeded ? 0 : 1;
+            System.exit(SpringApplication.exit(applicationContext, () -> exitCode));
+        }
+    }
+
+    /** Replays the backup directory; returns false if any file failed. */
+    public boolean backfill() throws IOException, InterruptedException {
+        Path source = Paths.get(backupDir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(source)) {
+            log.warn("Backfill: backup directory {} does not exist", source);
+            return true;
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        if (reset) {
+            tx.executeWithoutResult(s -> {
+                checkpointRepository.deleteById(source.toString());
+                replayedRepository.deleteBySourceDir(source.toString());
+            });
+        }
+        Map<String, BackfillFileEntity> replayed = new HashMap<>();
+        for (BackfillFileEntity file : replayedRepository.findBySourceDir(source.toString())) {
+            replayed.put(file.getName(), file);
+        }
+        List<BackupFile> files = listPending(source, replayed);
+        log.info("Backfill of {}: {} files to replay, {} replayed before", source, files.size(), replayed.size());
+
+        Progress progress = new Progress(files.size());
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, namedThreads());
+        try {
+            Deque<Future<Prepared>> window = new ArrayDeque<>();
+            List<Prepared> batch = new ArrayList<>(filesPerCommit);
+            int next = 0;
+            while (next < files.size() || !window.isEmpty()) {
+                // a bounded window of prepared files keeps memory flat and the write order intact
+                while (next < files.size() && window.size() < workers * 4) {
+                    BackupFile file = files.get(next++);
+                    window.add(executor.submit(() -> prepare(file)));
+                }
+                Prepared prepared = take(window.poll());
+                if (prepared.streamed()) {
+                    commit(batch, tx, source, progress);
+                    commitStreamed(prepared, tx, source, progress);
+                } else {
+                    batch.add(prepared);
+                    if (batch.size() >= filesPerCommit) {
+                        commit(batch, tx, source, progress);
+                    }
+                }
+                progress.report(false);
+            }
+            commit(batch, tx, source, progress);
+        } finally {
+            executor.shutdownNow();
+        }
+        progress.report(true);
+
+        if (progress.saved > 0) {
+            if (projectionService.isEnabled()) {
+                projectionRebuilder.rebuild();
+            }
+            cache.invalidateAll();
+        }
+        return progress.failed == 0;
+    }
+
+    /** The backup files not in {@code replayed} with their current size and modification time, oldest first. */
+    private List<BackupFile> listPending(Path source, Map<String, BackfillFileEntity> replayed) throws IOException {
+        List<BackupFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (Files.isRegularFile(path) && (name.endsWith(".xml") || name.endsWith(".xml.gz"))) {
+                    BackupFile file = new BackupFile(path, source.relativize(path).toString(),
+                            Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+                    BackfillFileEntity previous = replayed.get(file.name());
+                    if (previous == null || previous.getSize() != file.size() || previous.getLastModified() != file.lastModified()) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(BackupFile::lastModified).thenComparing(BackupFile::name));
+        return files;
+    }
+
+    private Prepared prepare(BackupFile file) {
+        try {
+            if (streamingThresholdBytes > 0 && file.size() >= streamingThresholdBytes) {
+                return new Prepared(file, null, null, null);
+            }
+            byte[] content;
+            try (InputStream is = BackupService.open(file.path())) {
+                content = is.readAllBytes();
+            }
+            XmlRootRequest root = xmlMapper.readValue(content, XmlRootRequest.class);
+            if (root == null || root.getRequestDetails() == null) {
+                return new Prepared(file, null, null, "no requestDetails");
+            }
+            return new Prepared(file, requestDetailsService.getRequestDetailsEntity(root), ledger.hash(content), null);
+        } catch (Exception e) {
+            return new Prepared(file, null, null, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void commit(List<Prepared> batch, TransactionTemplate tx, Path source, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] outcomes = new int[batch.size()];
+        try {
+            tx.executeWithoutResult(s -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    outcomes[i] = write(batch.get(i));
+                    markReplayed(source, batch.get(i).file(), outcomes[i]);
+                }
+                saveCheckpoint(source, batch.get(batch.size() - 1).file(), progress.done + batch.size());
+            });
+            for (int i = 0; i < batch.size(); i++) {
+                count(batch.get(i), outcomes[i], progress);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Backfill: batch of {} files failed ({}), retrying them one by one", batch.size(), e.getMessage());
+            for (Prepared prepared : batch) {
+                int[] outcome = new int[1];
+                try {
+                    tx.executeWithoutResult(s -> {
+                        outcome[0] = write(prepared);
+                        markReplayed(source, prepared.file(), outcome[0]);
+                        saveCheckpoint(source, prepared.file(), progress.done + 1);
+                    });
+                } catch (RuntimeException fileFailure) {
+                    log.error("Backfill: failed to write {}: {}", prepared.file().name(), fileFailure.getMessage());
+                    outcome[0] = FAILED;
+                }
+                count(prepared, outcome[0], progress);
+            }
+        }
+        batch.clear();
+    }
+
+    /** Writes one prepared file in the current transaction and returns its outcome. */
+    private int write(Prepared prepared) {
+        if (prepared.error() != null) {
+            log.warn("Backfill: skipping {}: {}", prepared.file().name(), prepared.error());
+            return FAILED;
+        }
+        if (ledger.isProcessed(prepared.contentHash())) {
+            return DUPLICATE;
+        }
+        RequestDetailsEntity request = prepared.request();
+        requestDetailsWriter.save(request);
+        ledger.record(request.getId(), prepared.contentHash(), prepared.file().path(), prepared.file().size());
+        return SAVED;
+    }
+
+    private static void count(Prepared prepared, int outcome, Progress progress) {
+        progress.done++;
+        switch (outcome) {
+            case SAVED -> {
+                progress.saved++;
+                List<EventEntity> events = prepared.request().getEvents();
+                if (events != null) {
+                    progress.events += events.size();
+                    progress.products += FileProcessorService.countProducts(events);
+                }
+            }
+            case DUPLICATE -> progress.duplicates++;
+            default -> progress.failed++;
+        }
+    }
+
+    private void commitStreamed(Prepared prepared, TransactionTemplate tx, Path source, Progress progress) {
+        BackupFile file = prepared.file();
+        boolean[] duplicate = new boolean[1];
+        try {
+            FileProcessorService.StreamedFile streamed = tx.execute(s -> {
+                try {
+                    String contentHash = ledger.hash(file.path());
+                    duplicate[0] = ledger.isProcessed(contentHash);
+                    if (duplicate[0]) {
+                        markReplayed(source, file, DUPLICATE);
+                        saveCheckpoint(source, file, progress.done + 1);
+                        return null;
+                    }
+                    FileProcessorService.StreamedFile written = fileProcessorService.writeStreaming(file.path(), file.size(), contentHash);
+                    markReplayed(source, file, written != null ? SAVED : FAILED);
+                    saveCheckpoint(source, file, progress.done + 1);
+                    return written;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+            if (streamed != null) {
+                progress.saved++;
+                progress.events += streamed.events();
+                progress.products += streamed.products();
+            } else if (duplicate[0]) {
+                progress.duplicates++;
+            } else {
+                log.warn("Backfill: skipping {}: no requestDetails", file.name());
+                progress.failed++;
+            }
+        } catch (RuntimeException e) {
+            log.error("Backfill: failed to stream {}: {}", file.name(), e.getMessage());
+            progress.failed++;
+        }
+        progress.done++;
+    }
+
+    /** Records, in the current transaction, that a file was handled; failed files are left to be replayed again. */
+    private void markReplayed(Path source, BackupFile file, int outcome) {
+        if (outcome == FAILED) {
+            return;
+        }
+        BackfillFileEntity replayed = new BackfillFileEntity();
+        replayed.setSourceDir(source.toString());
+        replayed.setName(file.name());
+        replayed.setSize(file.size());
+        replayed.setLastModified(file.lastModified());
+        replayedRepository.save(replayed);
+    }
+
+    private void saveCheckpoint(Path source, BackupFile last, long files) {
+        BackfillCheckpointEntity checkpoint = new BackfillCheckpointEntity();
+        checkpoint.setSourceDir(source.toString());
+        checkpoint.setLastModified(last.lastModified());
+        checkpoint.setLastFile(last.name());
+        checkpoint.setFiles(files);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+    }
+
+    private static Prepared take(Future<Prepared> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // prepare() reports its own failures, so this is unexpected
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "backfill-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
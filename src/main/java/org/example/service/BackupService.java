@@ -1,37 +1,232 @@
 package org.example.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Archives processed files into {@code app.backup-dir}.
+ * <p>
+ * Moves happen after the file's transaction commits, on {@code app.backup.threads} threads fed by
+ * a queue of {@code app.backup.queue-capacity} files, so a slow backup volume does not hold database
+ * transactions open. When the queue is full the committing thread moves the file itself. After a
+ * rollback the file stays in the input directory and is picked up again by the next run, until it
+ * has been rolled back {@code app.backup.max-rollbacks} times; then it is archived like any
+ * failed file, so a file that can never be written is not retried forever.
+ * <p>
+ * Files go to a subdirectory named by {@code app.backup.partition}, a date pattern of the day they
+ * are archived, and are gzip-compressed to {@code *.xml.gz} when {@code app.backup.compression}
+ * is {@code gzip}. Either way they keep their modification time.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class BackupService {
 
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final IngestionMetrics metrics;
+
     @Value("${app.backup-dir:backup}")
     private String backupDir;
 
-    private void moveToBackup(Path file) throws IOException {
-        Path backup = Paths.get(backupDir);
-        if (!Files.exists(backup)) Files.createDirectories(backup);
-        Path target = backup.resolve(file.getFileName());
-        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
-        log.info("Moved file to backup: {}", target);
+    @Value("${app.backup.threads:1}")
+    private int threads;
+
+    @Value("${app.backup.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // subdirectory per archive day; empty keeps a flat directory
+    @Value("${app.backup.partition:yyyy-MM-dd}")
+    private String partition;
+
+    @Value("${app.backup.compression:none}")
+    private String compression;
+
+    // 0 retries rolled back files forever
+    @Value("${app.backup.max-rollbacks:3}")
+    private int maxRollbacks;
+
+    // rollbacks per file name, which is kept while a file is claimed by a node
+    private final Map<String, Integer> rollbacks = new ConcurrentHashMap<>();
+
+    // files committed but not yet archived; the scans skip them
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    // directories already created, so a move does not check the file system for them every time
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor movers;
+
+    private volatile DateTimeFormatter partitionFormat;
+
+    @PostConstruct
+    void registerGauges() {
+        metrics.gauge("ingest.backup.pending", "Processed files waiting to be moved to the backup directory", pending, Set::size);
     }
 
+    /**
+     * Moves the file to the backup directory once the current transaction commits, or right away
+     * outside a transaction. Failures are logged and leave the file where it is.
+     */
     public void tryMoveToBackup(Path path) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(path);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED || !keepForRetry(path)) {
+                    enqueue(path);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called after the transaction writing the file rolled back: returns true and leaves the file in
+     * place to be processed again, or false once it has been rolled back
+     * {@code app.backup.max-rollbacks} times and should be archived as failed.
+     */
+    public boolean keepForRetry(Path path) {
+        String name = String.valueOf(path.getFileName());
+        int count = rollbacks.merge(name, 1, Integer::sum);
+        if (maxRollbacks > 0 && count >= maxRollbacks) {
+            rollbacks.remove(name);
+            log.warn("Transaction rolled back {} times for {}, giving up on it", count, name);
+            return false;
+        }
+        log.warn("Transaction rolled back, leaving {} in place to be processed again", name);
+        return true;
+    }
+
+    /** Whether the file has been processed and is waiting to be archived. */
+    public boolean isPending(Path path) {
+        return pending.contains(path);
+    }
+
+    /** Opens a file for reading, decompressing it if it was archived with gzip. */
+    public static InputStream open(Path path) throws IOException {
+        InputStream is = Files.newInputStream(path, StandardOpenOption.READ);
+        return String.valueOf(path.getFileName()).endsWith(GZIP_SUFFIX) ? new GZIPInputStream(is, 65536) : is;
+    }
+
+    private void enqueue(Path path) {
+        if (!rollbacks.isEmpty()) {
+            rollbacks.remove(String.valueOf(path.getFileName()));
+        }
+        if (!pending.add(path)) {
+            return;
+        }
+        try {
+            movers().execute(() -> move(path));
+        } catch (RuntimeException e) {
+            pending.remove(path);
+            log.error("Failed to queue {} for backup: {}", path, e.getMessage(), e);
+        }
+    }
+
+    private void move(Path file) {
+        long started = System.nanoTime();
         try {
-            moveToBackup(path);
+            Path target = moveToBackup(file);
+            log.info("Moved file to backup: {}", target);
         } catch (Exception me) {
-            log.error("Failed to move skipped file to backup: {}", me.getMessage(), me);
+            log.error("Failed to move file to backup: {}", me.getMessage(), me);
+        } finally {
+            pending.remove(file);
+            metrics.recordStage(IngestionMetrics.Stage.BACKUP, System.nanoTime() - started);
+        }
+    }
+
+    private Path moveToBackup(Path file) throws IOException {
+        Path dir = Paths.get(backupDir);
+        if (!partition.isBlank()) {
+            dir = dir.resolve(partitionFormat().format(LocalDate.now()));
+        }
+        if (!createdDirectories.contains(dir)) {
+            Files.createDirectories(dir);
+            createdDirectories.add(dir);
+        }
+        if (!"gzip".equalsIgnoreCase(compression)) {
+            Path target = dir.resolve(file.getFileName());
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        }
+        Path target = dir.resolve(file.getFileName() + GZIP_SUFFIX);
+        Path part = dir.resolve(file.getFileName() + GZIP_SUFFIX + ".part");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(part), 65536)) {
+            Files.copy(file, os);
+        }
+        Files.setLastModifiedTime(part, Files.getLastModifiedTime(file));
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(file);
+        return target;
+    }
+
+    private DateTimeFormatter partitionFormat() {
+        // not synchronized: shutdown() holds the monitor while waiting for the movers
+        DateTimeFormatter format = partitionFormat;
+        if (format == null) {
+            format = DateTimeFormatter.ofPattern(partition);
+            partitionFormat = format;
+        }
+        return format;
+    }
+
+    private synchronized ThreadPoolExecutor movers() {
+        if (movers == null) {
+            int size = Math.max(1, threads);
+            AtomicInteger threadNumber = new AtomicInteger();
+            movers = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                        Thread t = new Thread(r, "backup-mover-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return movers;
+    }
+
+    /** Finishes the queued moves before shutdown. */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (movers != null) {
+            movers.shutdown();
+            try {
+                if (!movers.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("{} files were not moved to backup before shutdown", movers.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                movers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
         }
     }
 }
@@ -0,0 +1,185 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Decides which listed files a directory sweep takes, and in which order ({@code app.ingest.order}):
+ * <ul>
+ *     <li>{@code directory}: as the file system lists them</li>
+ *     <li>{@code age}: oldest modification time first, then by name (default)</li>
+ *     <li>{@code priority}: highest {@code app.ingest.partner-priority} of the file's sourceCompany
+ *     first, then by age. The head of every file is read to find its sourceCompany.</li>
+ * </ul>
+ * A sweep takes at most {@code app.ingest.scan.window} files; for {@code age} and {@code priority}
+ * the listing is read in full and the first files in that order are kept, the rest are left for the
+ * next sweep.
+ * Files modified less than {@code app.ingest.scan.min-age-ms} ago are still being written and are
+ * skipped. Files the caller already knows about (in flight, waiting for backup) are skipped without
+ * a file system call. A file's priority is kept from one sweep to the next until it is taken, so the
+ * heads of a large backlog are not read again on every sweep; its attributes are, and a file whose
+ * size or modification time changed meanwhile is checked again like a new one.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DirectoryScanner {
+
+    private enum Order {
+        DIRECTORY,
+        AGE,
+        PRIORITY
+    }
+
+    private final StreamingRequestReader streamingRequestReader;
+
+    @Value("${app.ingest.order:age}")
+    private String order;
+
+    // sourceCompany:priority pairs, e.g. "Big:10,Small:5"; partners not listed have priority 0
+    @Value("${app.ingest.partner-priority:}")
+    private String partnerPriority;
+
+    @Value("${app.ingest.scan.window:10000}")
+    private int window;
+
+    @Value("${app.ingest.scan.min-age-ms:1000}")
+    private long minAgeMs;
+
+    private Order parsedOrder = Order.DIRECTORY;
+    private final Map<String, Integer> priorities = new HashMap<>();
+
+    // settled files seen by earlier sweeps and not taken yet
+    private Map<Path, Candidate> seen = new HashMap<>();
+
+    private record Candidate(Path path, int priority, long modified, long size) {
+    }
+
+    /** The files a sweep takes, and whether the window was full and files were left for the next one. */
+    public record Scan(Iterable<Path> files, boolean truncated) {
+    }
+
+    private static final Comparator<Candidate> ORDER = Comparator.comparingInt(Candidate::priority).reversed()
+            .thenComparingLong(Candidate::modified)
+            .thenComparing(Candidate::path);
+
+    @PostConstruct
+    void parse() {
+        if (order != null && !order.isBlank()) {
+            parsedOrder = Order.valueOf(order.trim().toUpperCase(Locale.ROOT));
+        }
+        if (partnerPriority != null && !partnerPriority.isBlank()) {
+            for (String entry : partnerPriority.split(",")) {
+                int colon = entry.lastIndexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("app.ingest.partner-priority entry is not company:priority: " + entry);
+                }
+                priorities.put(entry.substring(0, colon).trim(), Integer.parseInt(entry.substring(colon + 1).trim()));
+            }
+        }
+        log.info("Scanning input by {}, window {}, min age {} ms, partner priorities {}",
+                parsedOrder.name().toLowerCase(Locale.ROOT), window, minAgeMs, priorities);
+    }
+
+    /** Picks the files to take from {@code listing}, skipping those {@code known} accepts. */
+    public synchronized Scan scan(Iterable<Path> listing, Predicate<Path> known) {
+        if (parsedOrder == Order.DIRECTORY && minAgeMs <= 0) {
+            return new Scan(listing, false);
+        }
+        long settledBefore = System.currentTimeMillis() - minAgeMs;
+        int capacity = window > 0 ? window : Integer.MAX_VALUE;
+        // the worst kept candidate on top, so it is the one replaced by a better file
+        PriorityQueue<Candidate> kept = new PriorityQueue<>(ORDER.reversed());
+        List<Candidate> listed = parsedOrder == Order.DIRECTORY ? new ArrayList<>() : null;
+        Map<Path, Candidate> notTaken = new HashMap<>();
+        boolean truncated = false;
+        int skipped = 0;
+        for (Path path : listing) {
+            if (known.test(path)) {
+                continue;
+            }
+            Candidate candidate = candidate(path, settledBefore, seen.get(path));
+            if (candidate == null) {
+                skipped++;
+                continue;
+            }
+            if (listed != null) {
+                if (listed.size() >= capacity) {
+                    truncated = true;
+                    break;
+                }
+                listed.add(candidate);
+                continue;
+            }
+            kept.add(candidate);
+            if (kept.size() > capacity) {
+                Candidate dropped = kept.poll();
+                notTaken.put(dropped.path(), dropped);
+                truncated = true;
+            }
+        }
+        if (skipped > 0) {
+            log.debug("Skipped {} files still being written or gone", skipped);
+        }
+        List<Candidate> taken;
+        if (listed != null) {
+            taken = listed;
+        } else {
+            taken = new ArrayList<>(kept);
+            taken.sort(ORDER);
+        }
+        seen = notTaken;
+        return new Scan(taken.stream().map(Candidate::path).toList(), truncated);
+    }
+
+    /**
+     * The file's candidate, or null if it was modified after {@code settledBefore} or is gone.
+     * {@code seen} is returned as it is if the file's size and modification time are unchanged.
+     */
+    private Candidate candidate(Path path, long settledBefore, Candidate seen) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (seen != null && seen.modified() == modified && seen.size() == attributes.size()) {
+            return seen;
+        }
+        if (minAgeMs > 0 && modified > settledBefore) {
+            return null;
+        }
+        return new Candidate(path, parsedOrder == Order.PRIORITY ? priority(path) : 0, modified, attributes.size());
+    }
+
+    private int priority(Path path) {
+        if (priorities.isEmpty()) {
+            return 0;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            String company = streamingRequestReader.readSourceCompany(in);
+            return company == null ? 0 : priorities.getOrDefault(company, 0);
+        } catch (IOException e) {
+            // unreadable or malformed; processing the file reports it
+            return 0;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.example.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +12,18 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -18,11 +32,40 @@ public class FileBatchProcessor {
     @Value("${app.input-dir:input}")
     private String inputDir;
 
+    // 1 keeps the original sequential behaviour on the scheduler thread
+    @Value("${app.ingest.parallelism:1}")
+    private int parallelism;
+
+    // files handed to workers but not yet finished; 0 means twice the parallelism
+    @Value("${app.ingest.max-in-flight:0}")
+    private int maxInFlight;
 
+    // caps on one directory sweep, 0 for none; whatever is left waits for the next sweep
+    @Value("${app.ingest.run.max-files:0}")
+    private int runMaxFiles;
 
+    @Value("${app.ingest.run.max-ms:0}")
+    private long runMaxMs;
 
     private final FileProcessorService fileProcessorService;
-    public void processFiles() {
+    private final BackupService backupService;
+    private final FileClaims fileClaims;
+    private final IngestPipeline pipeline;
+    private final DirectoryScanner directoryScanner;
+    private final IngestionMetrics metrics;
+
+    // files currently being processed, shared by the directory sweep and the watcher
+    private final Set<Path> inFlightFiles = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService workers;
+
+    private Semaphore inFlightPermits;
+
+    /** Files dispatched by a directory sweep, and whether it stopped at its budget with files left. */
+    public record RunResult(int files, boolean budgetReached) {
+    }
+
+    public RunResult processFiles() {
         // Resolve input directory: if relative, resolve against current working directory
         try {
             Path in = Paths.get(inputDir);
@@ -31,16 +74,327 @@ public class FileBatchProcessor {
                 Files.createDirectories(in);
             }
 
+            long started = System.nanoTime();
             int processedCount = 0;
+            long[] scanNanos = new long[1];
+            boolean[] budgetReached = new boolean[1];
             try (DirectoryStream<Path> stream = Files.newDirectoryStream(in, "*.xml")) {
-                for (Path path : stream) {
-                    processedCount++;
-                    fileProcessorService.processSingleFile(path);
+                DirectoryScanner.Scan scan = directoryScanner.scan(timed(stream, scanNanos), this::isKnown);
+                // an ordered scan has listed and checked everything by now; otherwise the listing is timed as it is consumed
+                scanNanos[0] = Math.max(scanNanos[0], System.nanoTime() - started);
+                budgetReached[0] = scan.truncated();
+                Iterable<Path> files = budgeted(scan.files(), started, budgetReached);
+                if (concurrent()) {
+                    processedCount = processConcurrently(files);
+                } else {
+                    for (Path path : files) {
+                        processedCount++;
+                        processClaimed(path);
+                    }
                 }
             }
+            metrics.recordStage(IngestionMetrics.Stage.SCAN, scanNanos[0]);
             log.info("Files found in directory: {}", processedCount);
+            if (budgetReached[0]) {
+                log.info("Run budget or scan window reached, remaining files are left for the next run");
+            }
+            logThroughput(processedCount, started);
+            return new RunResult(processedCount, budgetReached[0]);
         } catch (IOException e) {
             log.error("I/O error during file processing setup: {}", e.getMessage(), e);
+            return new RunResult(0, false);
+        }
+    }
+
+    /**
+     * Processes a single file found outside the directory sweep (e.g. by the watcher). In parallel
+     * mode the file joins the shared worker pool and this call only blocks while the in-flight limit
+     * is reached; otherwise it is processed on the calling thread.
+     */
+    public void dispatch(Path path) {
+        if (!concurrent()) {
+            processClaimed(path);
+            return;
+        }
+        try {
+            submit(path, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while dispatching {}", path);
+        }
+    }
+
+    /**
+     * Hands every file to the worker pool while holding at most {@code maxInFlight} files at once.
+     * The directory walk blocks when the limit is reached, and the method returns only after the
+     * whole run has drained, so scheduled runs never overlap. Each file still goes through the
+     * {@link FileProcessorService#processSingleFile(Path)} on its worker thread.
+     */
+    private int processConcurrently(Iterable<Path> stream) {
+        Phaser run = new Phaser(1);
+        int submitted = 0;
+        try {
+            for (Path path : stream) {
+                submit(path, run);
+                submitted++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while dispatching files, {} already submitted", submitted);
+        } finally {
+            run.arriveAndAwaitAdvance();
+        }
+        return submitted;
+    }
+
+    private void submit(Path path, Phaser run) throws InterruptedException {
+        if (!claim(path)) {
+            return;
+        }
+        Semaphore permits = inFlightPermits();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            inFlightFiles.remove(path);
+            throw e;
+        }
+        if (run != null) {
+            run.register();
+        }
+        try {
+            Runnable done = () -> {
+                inFlightFiles.remove(path);
+                permits.release();
+                if (run != null) {
+                    run.arriveAndDeregister();
+                }
+            };
+            workers().execute(() -> {
+                boolean handedOff = false;
+                try {
+                    handedOff = processClaimedFile(path, done);
+                } catch (Exception e) {
+                    log.error("Failed to process {} : {}", path, e.getMessage(), e);
+                } finally {
+                    if (!handedOff) {
+                        done.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightFiles.remove(path);
+            permits.release();
+            if (run != null) {
+                run.arriveAndDeregister();
+            }
+            throw e;
+        }
+    }
+
+    private void processClaimed(Path path) {
+        if (!claim(path)) {
+            return;
+        }
+        try {
+            processClaimedFile(path, null);
+        } catch (InterruptedException e) {
+            // only the pipeline hand-off waits, and it is not used without a completion callback
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlightFiles.remove(path);
+        }
+    }
+
+    /**
+     * Processes the file after claiming it from other nodes, see {@link FileClaims}. In pipelined
+     * mode a parsed file is handed to the {@link IngestPipeline} with {@code done}, and true is
+     * returned; the pipeline runs {@code done} once the file is written.
+     */
+    private boolean processClaimedFile(Path path, Runnable done) throws InterruptedException {
+        Path claimed = fileClaims.claim(path);
+        if (claimed == null) {
+            return false;
+        }
+        boolean handedOff = false;
+        try {
+            if (done == null || !pipeline.isEnabled()) {
+                fileProcessorService.processSingleFile(claimed);
+                return false;
+            }
+            FileProcessorService.PreparedFile prepared = fileProcessorService.prepare(claimed);
+            if (prepared != null && prepared.streamed()) {
+                fileProcessorService.processPrepared(prepared);
+            } else if (prepared != null) {
+                pipeline.persist(prepared, () -> {
+                    fileClaims.release(claimed);
+                    done.run();
+                });
+                handedOff = true;
+            }
+            return handedOff;
+        } finally {
+            if (!handedOff) {
+                fileClaims.release(claimed);
+            }
+        }
+    }
+
+    /** Whether the file is in flight or processed and waiting to be moved to backup. */
+    private boolean isKnown(Path path) {
+        return inFlightFiles.contains(path) || backupService.isPending(path);
+    }
+
+    /** Marks the file as in flight, unless it already is or it is processed and waiting to be moved to backup. */
+    private boolean claim(Path path) {
+        if (!inFlightFiles.add(path)) {
+            log.debug("File already in flight, skipping: {}", path);
+            return false;
+        }
+        // checked after claiming: a worker queues its file for backup before releasing the claim
+        if (backupService.isPending(path)) {
+            inFlightFiles.remove(path);
+            log.debug("File already processed, waiting for backup: {}", path);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends the iteration once {@code app.ingest.run.max-files} files were taken or
+     * {@code app.ingest.run.max-ms} have passed since {@code startedNanos}, setting {@code reached[0]}
+     * if files were left over.
+     */
+    private Iterable<Path> budgeted(Iterable<Path> files, long startedNanos, boolean[] reached) {
+        if (runMaxFiles <= 0 && runMaxMs <= 0) {
+            return files;
+        }
+        long deadline = startedNanos + TimeUnit.MILLISECONDS.toNanos(runMaxMs);
+        return () -> {
+            Iterator<Path> it = files.iterator();
+            return new Iterator<>() {
+                private int taken;
+
+                @Override
+                public boolean hasNext() {
+                    boolean spent = (runMaxFiles > 0 && taken >= runMaxFiles)
+                            || (runMaxMs > 0 && System.nanoTime() - deadline >= 0);
+                    if (spent) {
+                        reached[0] = it.hasNext();
+                        return false;
+                    }
+                    return it.hasNext();
+                }
+
+                @Override
+                public Path next() {
+                    taken++;
+                    return it.next();
+                }
+            };
+        };
+    }
+
+    /** Iterates the directory while adding the time spent listing it (not processing) to {@code nanos[0]}. */
+    private static Iterable<Path> timed(DirectoryStream<Path> stream, long[] nanos) {
+        return () -> {
+            Iterator<Path> files = stream.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    long started = System.nanoTime();
+                    try {
+                        return files.hasNext();
+                    } finally {
+                        nanos[0] += System.nanoTime() - started;
+                    }
+                }
+
+                @Override
+                public Path next() {
+                    long started = System.nanoTime();
+                    try {
+                        return files.next();
+                    } finally {
+                        nanos[0] += System.nanoTime() - started;
+                    }
+                }
+            };
+        };
+    }
+
+    @PostConstruct
+    void registerGauges() {
+        metrics.gauge("ingest.in.flight", "Files currently being processed", inFlightFiles, Set::size);
+        metrics.gauge("ingest.backlog", "XML files waiting in the input directory, counted when scraped", this, FileBatchProcessor::countBacklog);
+    }
+
+    private double countBacklog() {
+        long count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(inputDir), "*.xml")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+        return count;
+    }
+
+    private void logThroughput(int count, long startedNanos) {
+        if (count == 0) {
+            return;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+        double perSecond = elapsedMs == 0 ? count : count * 1000.0 / elapsedMs;
+        log.info("Processed {} files in {} ms ({} files/s, parallelism {})",
+                count, elapsedMs, String.format("%.1f", perSecond), Math.max(1, parallelism));
+    }
+
+    // with the pipeline the workers only parse, so files also wait in and are written by its persist stage
+    private boolean concurrent() {
+        return parallelism > 1 || pipeline.isEnabled();
+    }
+
+    private int effectiveMaxInFlight() {
+        if (maxInFlight > 0) {
+            return maxInFlight;
+        }
+        return Math.max(1, parallelism) * 2 + (pipeline.isEnabled() ? pipeline.capacity() : 0);
+    }
+
+    private synchronized Semaphore inFlightPermits() {
+        if (inFlightPermits == null) {
+            inFlightPermits = new Semaphore(effectiveMaxInFlight());
+        }
+        return inFlightPermits;
+    }
+
+    private synchronized ExecutorService workers() {
+        if (workers == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            int threads = Math.max(1, parallelism);
+            workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "ingest-worker-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return workers;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
         }
     }
 }
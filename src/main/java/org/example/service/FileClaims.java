@@ -0,0 +1,219 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets several instances share one input directory ({@code app.cluster.enabled}).
+ * <p>
+ * A node claims a file by renaming it into its own directory {@code <input>/.claims/<node-id>},
+ * which only one node can win. The claimed file is processed and archived from there; if it is
+ * neither archived nor queued for archiving afterwards (access denied, rolled back) it is renamed
+ * back into the input directory for any node to retry.
+ * <p>
+ * Every {@code app.cluster.heartbeat-ms} a node rewrites {@code .heartbeat} in its claim directory
+ * and returns to the input directory the files of every node whose heartbeat is more than
+ * {@code app.cluster.claim-expiry-ms} older than its own. Both times are set by the file system on
+ * write, so the nodes' clocks need not agree. At startup a node also returns the files it claimed before
+ * it last stopped. The renames need all nodes to see the input directory as one file system.
+ * When clustering is disabled files are processed where they are.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class FileClaims {
+
+    private static final String CLAIMS_DIR = ".claims";
+    private static final String HEARTBEAT = ".heartbeat";
+
+    private final BackupService backupService;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.input-dir:input}")
+    private String inputDir;
+
+    @Value("${app.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${app.cluster.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${app.cluster.claim-expiry-ms:60000}")
+    private long claimExpiryMs;
+
+    private Path claimsRoot;
+    private Path ownClaims;
+    private ScheduledExecutorService heartbeats;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = ProcessHandle.current().pid() + "@" + hostName();
+        }
+        claimsRoot = Paths.get(inputDir).resolve(CLAIMS_DIR);
+        ownClaims = claimsRoot.resolve(nodeId);
+        Files.createDirectories(ownClaims);
+        int returned = returnClaims(ownClaims);
+        heartbeat();
+        log.info("Cluster ingestion as node {}, {} files left from a previous run returned", nodeId, returned);
+
+        // not the shared scheduler, which a long directory sweep can hold for longer than the expiry
+        heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeatAndReclaim, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Claims the file for this node. Returns the path to process it from, or null if another node
+     * claimed it first.
+     */
+    public Path claim(Path file) {
+        if (!enabled) {
+            return file;
+        }
+        Path claimed = ownClaims.resolve(file.getFileName());
+        if (Files.exists(claimed)) {
+            // a file of the same name is still being processed or archived here; claim this one later
+            return null;
+        }
+        try {
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+            return claimed;
+        } catch (NoSuchFileException e) {
+            log.debug("File claimed by another node: {}", file.getFileName());
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not claim {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Returns a claimed file to the input directory unless it was archived or is waiting to be. */
+    public void release(Path claimed) {
+        if (!enabled || backupService.isPending(claimed) || !Files.exists(claimed)) {
+            return;
+        }
+        try {
+            returnFile(claimed);
+        } catch (IOException e) {
+            log.error("Could not return {} to the input directory: {}", claimed.getFileName(), e.getMessage(), e);
+        }
+    }
+
+    private void heartbeatAndReclaim() {
+        try {
+            long expiredBefore = heartbeat() - claimExpiryMs;
+            try (DirectoryStream<Path> nodes = Files.newDirectoryStream(claimsRoot, Files::isDirectory)) {
+                for (Path node : nodes) {
+                    if (!node.equals(ownClaims) && lastHeartbeat(node) < expiredBefore) {
+                        int returned = returnClaims(node);
+                        log.warn("Node {} stopped sending heartbeats, returned {} of its files", node.getFileName(), returned);
+                        remove(node);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Cluster heartbeat failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Rewrites this node's heartbeat and returns its modification time on the file system's clock. */
+    private long heartbeat() throws IOException {
+        Path heartbeat = ownClaims.resolve(HEARTBEAT);
+        try {
+            // written rather than touched with setLastModifiedTime, which would stamp this node's clock
+            Files.writeString(heartbeat, nodeId);
+        } catch (NoSuchFileException e) {
+            Files.createDirectories(ownClaims);
+            Files.writeString(heartbeat, nodeId);
+        }
+        return Files.getLastModifiedTime(heartbeat).toMillis();
+    }
+
+    private static long lastHeartbeat(Path node) throws IOException {
+        try {
+            return Files.getLastModifiedTime(node.resolve(HEARTBEAT)).toMillis();
+        } catch (NoSuchFileException e) {
+            return Files.getLastModifiedTime(node).toMillis();
+        }
+    }
+
+    private int returnClaims(Path node) throws IOException {
+        int returned = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(node, "*.xml")) {
+            for (Path file : files) {
+                try {
+                    returnFile(file);
+                    returned++;
+                } catch (NoSuchFileException e) {
+                    // processed or returned meanwhile
+                }
+            }
+        }
+        return returned;
+    }
+
+    private void returnFile(Path claimed) throws IOException {
+        Path target = Paths.get(inputDir).resolve(claimed.getFileName());
+        if (Files.exists(target)) {
+            // a newer file of the same name was dropped meanwhile; it wins, as it would have without the claim
+            log.warn("Not returning {}, a newer file of that name is waiting", claimed.getFileName());
+            backupService.tryMoveToBackup(claimed);
+            return;
+        }
+        Files.move(claimed, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Deletes an expired node's claim directory; a node that was only paused recreates it. */
+    private static void remove(Path node) {
+        try {
+            Files.deleteIfExists(node.resolve(HEARTBEAT));
+            Files.deleteIfExists(node);
+        } catch (IOException e) {
+            log.debug("Could not remove claim directory {}: {}", node, e.getMessage());
+        }
+    }
+
+    private static String hostName() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                host = "localhost";
+            }
+        }
+        return host;
+    }
+
+    @PreDestroy
+    void stop() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+    }
+}
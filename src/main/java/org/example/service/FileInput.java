@@ -0,0 +1,120 @@
+package org.example.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens request files for the XML parser, which decodes the bytes itself.
+ * <ul>
+ *     <li>Files of at least {@code mapThresholdBytes} are memory-mapped, so the parser reads them
+ *     from the page cache without a system call per buffer.</li>
+ *     <li>Files of at most {@code bufferBytes} are read with one call into a buffer reused by the
+ *     calling thread.</li>
+ *     <li>Anything else, and archived {@code .gz} files, is read as a plain stream.</li>
+ * </ul>
+ * A threshold of 0 disables that path. A stream over a thread's buffer must be closed before the
+ * same thread opens another file.
+ * <p>
+ * Reading a mapped file that another process truncates faults, and the JVM reports that as an
+ * {@link InternalError} at some later point of the reading thread, not necessarily inside
+ * {@code read}. Code consuming a stream from here therefore catches it around the whole read and
+ * rethrows it with {@link #truncated}.
+ */
+public final class FileInput {
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private FileInput() {
+    }
+
+    public static InputStream open(Path path, long size, int bufferBytes, long mapThresholdBytes) throws IOException {
+        if (String.valueOf(path.getFileName()).endsWith(".gz")) {
+            return BackupService.open(path);
+        }
+        if (mapThresholdBytes > 0 && size >= mapThresholdBytes && size <= Integer.MAX_VALUE) {
+            return map(path);
+        }
+        if (size > 0 && size <= bufferBytes) {
+            InputStream buffered = readFully(path, (int) size);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        return Files.newInputStream(path, StandardOpenOption.READ);
+    }
+
+    /** The IOException to report for the InternalError of a mapped file truncated while it was read. */
+    static IOException truncated(InternalError e) {
+        return new IOException("File was truncated while being read: " + e.getMessage(), e);
+    }
+
+    private static InputStream map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed and is released when collected
+            return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** The file read into this thread's buffer, or null if its size is no longer {@code size}. */
+    private static InputStream readFully(Path path, int size) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            BUFFERS.set(buffer);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, size);
+            while (target.hasRemaining() && channel.read(target) >= 0) {
+                // read until full or end of file
+            }
+            if (target.hasRemaining() || channel.size() != size) {
+                return null;
+            }
+        }
+        return new ByteArrayInputStream(buffer, 0, size);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -1,54 +1,337 @@
-
 package org.example.service;
 
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.dto.EventDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.entities.EventEntity;
 import org.example.entities.RequestDetailsEntity;
-import org.example.repository.RequestDetailsRepository;
 import org.example.entities.XmlRootRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FileProcessorService {
-    private final RequestDetailsRepository requestDetailsRepository;
     private final RequestDetailsService requestDetailsService;
     private final BackupService backupService;
+    private final StreamingRequestReader streamingRequestReader;
+    private final RequestDetailsWriter requestDetailsWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IngestionMetrics metrics;
+    private final ProcessedFileLedger ledger;
+    private final PlatformTransactionManager transactionManager;
 
     protected XmlMapper xmlMapper = XmlMapper.builder().addModule(new JavaTimeModule()).build();
 
+    // files at least this large are streamed event by event; 0 disables streaming
+    @Value("${app.ingest.streaming-threshold-bytes:16777216}")
+    private long streamingThresholdBytes;
+
+    @Value("${app.ingest.streaming-chunk-size:500}")
+    private int streamingChunkSize;
+
+    // see FileInput; 0 disables the path
+    @Value("${app.ingest.read-buffer-bytes:1048576}")
+    private int readBufferBytes;
+
+    @Value("${app.ingest.mmap-threshold-bytes:4194304}")
+    private long mmapThresholdBytes;
+
 
-    @Transactional
+    /**
+     * Processes one file. Checks, the duplicate lookup and parsing happen first; the writes then run
+     * in a transaction of their own, so a failure anywhere in them (a malformed element late in a
+     * streamed file, a failed JDBC batch) rolls back the whole file and the stored request stays as
+     * it was. The file is archived and counted only after that transaction has completed.
+     */
     public void processSingleFile(Path path) {
+        PreparedFile prepared = prepare(path);
+        if (prepared != null) {
+            processPrepared(prepared);
+        }
+    }
+
+    /** Writes a file returned by {@link #prepare} as {@link #processSingleFile} does, without reading it again. */
+    public void processPrepared(PreparedFile prepared) {
+        long[] written = new long[1];
+        StreamedFile streamed;
         try {
-            if (isFilesAreUnreadable(path)) return;
-
-            try (InputStream is = Files.newInputStream(path, StandardOpenOption.READ)) {
-                XmlRootRequest root = xmlMapper.readValue(is, XmlRootRequest.class);
-                if (root == null || root.getRequestDetails() == null) {
-                    log.warn("Skipping file, no requestDetails: {}", path);
-                    backupService.tryMoveToBackup(path);
-                    return;
+            streamed = new TransactionTemplate(transactionManager).execute(status -> {
+                StreamedFile result = prepared.streamed() ? writeStreamed(prepared) : null;
+                if (!prepared.streamed()) {
+                    eventPublisher.publishEvent(new InsuredProductsChangedEvent(write(prepared)));
                 }
-                RequestDetailsEntity requestDetails = requestDetailsService.getRequestDetailsEntity(root);
-                requestDetailsRepository.save(requestDetails);
-                log.info("Saved data from file: {}", path.getFileName());
-                backupService.tryMoveToBackup(path);
+                written[0] = System.nanoTime();
+                return result;
+            });
+        } catch (Exception ex) {
+            rolledBack(prepared.path(), ex);
+            return;
+        }
+        metrics.recordStage(IngestionMetrics.Stage.COMMIT, System.nanoTime() - written[0]);
+        if (!prepared.streamed()) {
+            finish(prepared);
+        } else if (streamed != null) {
+            log.info("Saved data from file (streamed): {}", prepared.path().getFileName());
+            moveToBackup(prepared.path());
+            metrics.recordFileWritten(prepared.size(), streamed.events(), streamed.products());
+        }
+    }
+
+    /**
+     * Streams the file into the current transaction. A file whose events come before its
+     * requestDetails is bound as a whole document instead. Returns null when there was nothing to
+     * write; the file is then already counted and its move to backup requested.
+     */
+    private StreamedFile writeStreamed(PreparedFile prepared) {
+        Path path = prepared.path();
+        try {
+            StreamedFile streamed = writeStreaming(path, prepared.size(), prepared.contentHash());
+            if (streamed == null) {
+                log.warn("Skipping file, no requestDetails: {}", path);
+                metrics.recordOutcome(IngestionMetrics.Outcome.SKIPPED);
+                moveToBackup(path);
+                return null;
+            }
+            eventPublisher.publishEvent(new InsuredProductsChangedEvent(streamed.touched()));
+            return streamed;
+        } catch (StreamingRequestReader.RequestDetailsNotFirstException e) {
+            log.info("Cannot stream {} ({}), binding whole document instead", path.getFileName(), e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            PreparedFile bound = bind(path, prepared.size(), prepared.contentHash());
+            if (bound != null) {
+                eventPublisher.publishEvent(new InsuredProductsChangedEvent(write(bound)));
+                List<EventEntity> events = bound.requestDetails().getEvents() != null ? bound.requestDetails().getEvents() : List.of();
+                return new StreamedFile(Set.of(), events.size(), countProducts(events));
             }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A file parsed and mapped by {@link #prepare}, waiting to be written. {@code requestDetails} is
+     * null when the file is large enough to be streamed, which happens while it is written.
+     */
+    public record PreparedFile(Path path, long size, String contentHash, RequestDetailsEntity requestDetails) {
+
+        public boolean streamed() {
+            return requestDetails == null;
+        }
+
+        /** Rows the file writes: its request, events and products. */
+        public long rows() {
+            if (requestDetails == null || requestDetails.getEvents() == null) {
+                return 1;
+            }
+            return 1 + requestDetails.getEvents().size() + countProducts(requestDetails.getEvents());
+        }
+    }
+
+    /**
+     * Everything before the writes, outside any transaction: checks, duplicate lookup, parsing and
+     * mapping. Returns null when nothing is left to write because the file was skipped, deferred, a
+     * duplicate or failed; it is then already counted and its move to backup requested. Files to
+     * be streamed are returned unparsed.
+     */
+    public PreparedFile prepare(Path path) {
+        try {
+            if (isFilesAreUnreadable(path)) {
+                metrics.recordOutcome(IngestionMetrics.Outcome.SKIPPED);
+                return null;
+            }
+
+            long size = Files.size(path);
+            long started = System.nanoTime();
+            String contentHash = ledger.hash(path);
+            boolean duplicate = ledger.isProcessed(contentHash);
+            metrics.recordStage(IngestionMetrics.Stage.DEDUP, System.nanoTime() - started);
+            if (duplicate) {
+                log.info("Skipping {}, its request already holds this exact content", path.getFileName());
+                metrics.recordOutcome(IngestionMetrics.Outcome.DUPLICATE);
+                moveToBackup(path);
+                return null;
+            }
+
+            if (shouldStream(size)) {
+                return new PreparedFile(path, size, contentHash, null);
+            }
+            return bind(path, size, contentHash);
         } catch (AccessDeniedException ade) {
             log.warn("Access denied when reading file (will retry later): {}", path);
+            metrics.recordOutcome(IngestionMetrics.Outcome.DEFERRED);
         } catch (Exception ex) {
-            log.error("Failed to process {} : {}", path, ex.getMessage(), ex);
-            backupService.tryMoveToBackup(path);
+            fail(path, ex);
+        }
+        return null;
+    }
+
+    /** Binds the whole document and maps it; null if it has no requestDetails, which is then counted as skipped. */
+    private PreparedFile bind(Path path, long size, String contentHash) throws IOException {
+        long started = System.nanoTime();
+        try (InputStream is = FileInput.open(path, size, readBufferBytes, mmapThresholdBytes)) {
+            metrics.recordStage(IngestionMetrics.Stage.OPEN, System.nanoTime() - started);
+            started = System.nanoTime();
+            XmlRootRequest root = parse(is);
+            metrics.recordStage(IngestionMetrics.Stage.PARSE, System.nanoTime() - started);
+            if (root == null || root.getRequestDetails() == null) {
+                log.warn("Skipping file, no requestDetails: {}", path);
+                metrics.recordOutcome(IngestionMetrics.Outcome.SKIPPED);
+                moveToBackup(path);
+                return null;
+            }
+            started = System.nanoTime();
+            RequestDetailsEntity requestDetails = requestDetailsService.getRequestDetailsEntity(root);
+            metrics.recordStage(IngestionMetrics.Stage.MAP, System.nanoTime() - started);
+            return new PreparedFile(path, size, contentHash, requestDetails);
+        }
+    }
+
+    private XmlRootRequest parse(InputStream is) throws IOException {
+        try {
+            return xmlMapper.readValue(is, XmlRootRequest.class);
+        } catch (InternalError e) {
+            throw FileInput.truncated(e);
+        }
+    }
+
+    /** Writes a prepared file in the current transaction and returns the insuredIds it touched. */
+    public Set<String> write(PreparedFile prepared) {
+        long started = System.nanoTime();
+        RequestDetailsEntity requestDetails = prepared.requestDetails();
+        Set<String> touched = requestDetailsWriter.save(requestDetails);
+        ledger.record(requestDetails.getId(), prepared.contentHash(), prepared.path(), prepared.size());
+        metrics.recordStage(IngestionMetrics.Stage.PERSIST, System.nanoTime() - started);
+        return touched;
+    }
+
+    /**
+     * After {@link #write}: requests the move to backup and records the file's metrics. Inside the
+     * file's transaction both take effect on commit; after it they take effect right away.
+     */
+    public void finish(PreparedFile prepared) {
+        log.info("Saved data from file: {}", prepared.path().getFileName());
+        moveToBackup(prepared.path());
+        List<EventEntity> events = prepared.requestDetails().getEvents() != null ? prepared.requestDetails().getEvents() : List.of();
+        metrics.recordFileWritten(prepared.size(), events.size(), countProducts(events));
+    }
+
+    /**
+     * Handles a file whose transaction rolled back. A file that cannot be read or parsed is failed
+     * right away; after a database error it is left for the next run, see
+     * {@link BackupService#keepForRetry}, since the error may come from a concurrent writer.
+     */
+    public void rolledBack(Path path, Exception ex) {
+        if (ex instanceof UncheckedIOException io) {
+            fail(path, io.getCause());
+        } else if (backupService.keepForRetry(path)) {
+            log.warn("Failed to write {}, will retry: {}", path.getFileName(), ex.getMessage());
+            metrics.recordOutcome(IngestionMetrics.Outcome.DEFERRED);
+        } else {
+            fail(path, ex);
+        }
+    }
+
+    /** Counts the file as failed and moves it to backup. */
+    public void fail(Path path, Exception ex) {
+        log.error("Failed to process {} : {}", path, ex.getMessage(), ex);
+        metrics.recordOutcome(IngestionMetrics.Outcome.FAILED);
+        moveToBackup(path);
+    }
+
+    private boolean shouldStream(long size) {
+        return streamingThresholdBytes > 0 && size >= streamingThresholdBytes;
+    }
+
+    private void moveToBackup(Path path) {
+        backupService.tryMoveToBackup(path);
+    }
+
+    static long countProducts(List<EventEntity> events) {
+        long products = 0;
+        for (EventEntity event : events) {
+            if (event.getProducts() != null) {
+                products += event.getProducts().size();
+            }
+        }
+        return products;
+    }
+
+    /** What {@link #writeStreaming} wrote: the insuredIds it touched and the number of events and products. */
+    public record StreamedFile(Set<String> touched, long events, long products) {
+    }
+
+    /**
+     * Persists the file in the current transaction chunk by chunk as the reader emits events, so
+     * memory use depends on the chunk size rather than on the number of events in the file.
+     * Returns null when the file has no requestDetails.
+     */
+    public StreamedFile writeStreaming(Path path, long size, String contentHash) throws IOException {
+        Set<String> touched = new HashSet<>();
+        long[] counts = new long[2];
+        // time spent mapping and persisting inside the callbacks, i.e. not parsing
+        long[] callbackNanos = new long[1];
+        StreamingRequestReader.Handler handler = new StreamingRequestReader.Handler() {
+            private RequestDetailsEntity header;
+
+            @Override
+            public void onRequestDetails(RequestDetailsDto requestDetails) {
+                long started = System.nanoTime();
+                header = requestDetailsService.getRequestDetailsHeader(requestDetails);
+                long mapped = System.nanoTime();
+                touched.addAll(requestDetailsWriter.saveHeader(header));
+                ledger.record(header.getId(), contentHash, path, size);
+                long persisted = System.nanoTime();
+                metrics.recordStage(IngestionMetrics.Stage.MAP, mapped - started);
+                metrics.recordStage(IngestionMetrics.Stage.PERSIST, persisted - mapped);
+                callbackNanos[0] += persisted - started;
+            }
+
+            @Override
+            public void onEvents(List<EventDto> events) {
+                long started = System.nanoTime();
+                List<EventEntity> entities = requestDetailsService.getEventEntities(events, header);
+                long mapped = System.nanoTime();
+                touched.addAll(requestDetailsWriter.saveEvents(entities));
+                long persisted = System.nanoTime();
+                metrics.recordStage(IngestionMetrics.Stage.MAP, mapped - started);
+                metrics.recordStage(IngestionMetrics.Stage.PERSIST, persisted - mapped);
+                callbackNanos[0] += persisted - started;
+                counts[0] += entities.size();
+                counts[1] += countProducts(entities);
+            }
+        };
+        boolean found;
+        long started = System.nanoTime();
+        try (InputStream is = FileInput.open(path, size, readBufferBytes, mmapThresholdBytes)) {
+            metrics.recordStage(IngestionMetrics.Stage.OPEN, System.nanoTime() - started);
+            started = System.nanoTime();
+            found = streamingRequestReader.read(is, streamingChunkSize, handler);
+            metrics.recordStage(IngestionMetrics.Stage.PARSE, System.nanoTime() - started - callbackNanos[0]);
+        } catch (InternalError e) {
+            throw FileInput.truncated(e);
         }
+        return found ? new StreamedFile(touched, counts[0], counts[1]) : null;
     }
 
 
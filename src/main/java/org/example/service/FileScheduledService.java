@@ -1,25 +1,92 @@
 package org.example.service;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+
+/**
+ * Runs the directory sweep. Each run starts {@code app.poll-interval-ms} after the previous one
+ * ended, unless {@code app.poll.adaptive} is set: then the delay follows the backlog, going down to
+ * {@code app.poll.min-interval-ms} while runs find more files than the one before or stop at their
+ * budget, halving while files keep coming, and doubling back up to {@code app.poll-interval-ms}
+ * when a run finds nothing.
+ */
 @Service
 @Slf4j
-@AllArgsConstructor
-public class FileScheduledService {
+@RequiredArgsConstructor
+public class FileScheduledService implements SchedulingConfigurer {
 
     private final FileBatchProcessor fileBatchProcessor;
+    private final IngestionMetrics metrics;
+
+    @Value("${app.poll-interval-ms:60000}")
+    private long pollIntervalMs;
+
+    @Value("${app.initial-delay-ms:0}")
+    private long initialDelayMs;
 
+    @Value("${app.poll.adaptive:false}")
+    private boolean adaptive;
 
-    @Scheduled(fixedDelayString = "${app.poll-interval-ms:60000}", initialDelayString = "${app.initial-delay-ms:0}")
+    @Value("${app.poll.min-interval-ms:1000}")
+    private long minIntervalMs;
+
+    private volatile long delayMs;
+    private volatile int lastRunFiles;
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        delayMs = pollIntervalMs;
+        metrics.gauge("ingest.poll.delay", "Delay before the next scheduled sweep, in seconds", this, s -> s.delayMs / 1000.0);
+        metrics.gauge("ingest.run.files", "Files dispatched by the last scheduled sweep", this, s -> s.lastRunFiles);
+        registrar.addTriggerTask(this::Schedule, context -> {
+            Instant lastCompletion = context.lastCompletion();
+            return lastCompletion == null
+                    ? Instant.now().plusMillis(initialDelayMs)
+                    : lastCompletion.plusMillis(delayMs);
+        });
+    }
+
+    // with app.watch.enabled this acts as the reconciliation sweep behind InputDirectoryWatcher
     public void Schedule() {
         try {
             log.debug("Scheduled poll triggered");
-            fileBatchProcessor.processFiles();
+            FileBatchProcessor.RunResult run = fileBatchProcessor.processFiles();
+            if (adaptive) {
+                adapt(run);
+            }
+            lastRunFiles = run.files();
         } catch (Exception e) {
             log.error("Error processing files: {}", e.getMessage(), e);
         }
     }
+
+    private void adapt(FileBatchProcessor.RunResult run) {
+        long min = Math.max(1, Math.min(minIntervalMs, pollIntervalMs));
+        IngestionMetrics.PollDecision decision;
+        long next;
+        if (run.budgetReached()) {
+            decision = IngestionMetrics.PollDecision.BUDGET;
+            next = min;
+        } else if (run.files() == 0) {
+            decision = IngestionMetrics.PollDecision.IDLE;
+            next = Math.min(pollIntervalMs, delayMs * 2);
+        } else if (run.files() > lastRunFiles) {
+            decision = IngestionMetrics.PollDecision.GROWING;
+            next = min;
+        } else {
+            decision = IngestionMetrics.PollDecision.DRAINING;
+            next = Math.max(min, delayMs / 2);
+        }
+        metrics.recordPollDecision(decision);
+        if (next != delayMs) {
+            log.debug("Next poll in {} ms ({}, {} files)", next, decision, run.files());
+        }
+        delayMs = next;
+    }
 }
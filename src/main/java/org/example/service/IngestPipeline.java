@@ -0,0 +1,215 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The persist stage of pipelined ingestion ({@code app.ingest.pipeline.enabled}).
+ * <p>
+ * The ingest workers of {@link FileBatchProcessor} only parse and map files
+ * ({@link FileProcessorService#prepare}) and hand them to a queue of
+ * {@code app.ingest.pipeline.queue-capacity} files, waiting when it is full. Each of the
+ * {@code app.ingest.pipeline.persist-threads} threads groups queued files and writes each group in
+ * one transaction, so parsing continues while the database works and small files share a commit
+ * instead of paying for one each. A group is closed at {@code app.ingest.pipeline.files-per-commit}
+ * files or {@code app.ingest.pipeline.max-rows-per-commit} rows, or when no further file arrives
+ * within {@code app.ingest.pipeline.linger-ms} of the first. The projection is refreshed once per
+ * transaction for all the insureds it touched. If the transaction fails its files are written again
+ * one per transaction, so one bad file does not fail the others. Files are moved to backup only
+ * after the transaction holding their rows has committed.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IngestPipeline {
+
+    private final FileProcessorService fileProcessorService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+    private final IngestionMetrics metrics;
+
+    @Value("${app.ingest.pipeline.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.ingest.pipeline.persist-threads:1}")
+    private int persistThreads;
+
+    @Value("${app.ingest.pipeline.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.ingest.pipeline.files-per-commit:50}")
+    private int filesPerCommit;
+
+    // 0 means no row limit
+    @Value("${app.ingest.pipeline.max-rows-per-commit:20000}")
+    private long maxRowsPerCommit;
+
+    @Value("${app.ingest.pipeline.linger-ms:10}")
+    private long lingerMs;
+
+    private record Queued(FileProcessorService.PreparedFile file, Runnable done) {
+    }
+
+    private BlockingQueue<Queued> queue;
+    private ExecutorService persisters;
+    private volatile boolean stopping;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Files the stage holds at most: those queued and those being written. */
+    public int capacity() {
+        return Math.max(1, queueCapacity) + Math.max(1, persistThreads) * Math.max(1, filesPerCommit);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        metrics.gauge("ingest.pipeline.persist.queue", "Parsed files waiting to be written", queue, BlockingQueue::size);
+        int threads = Math.max(1, persistThreads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        persisters = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ingest-persist-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads; i++) {
+            persisters.execute(this::persistLoop);
+        }
+        log.info("Pipelined ingestion: {} persist threads, up to {} files or {} rows per transaction, linger {} ms",
+                threads, filesPerCommit, maxRowsPerCommit, lingerMs);
+    }
+
+    /**
+     * Queues a prepared file for writing, waiting while the queue is full. {@code done} runs once
+     * the file's transaction has completed, whatever its outcome.
+     */
+    public void persist(FileProcessorService.PreparedFile file, Runnable done) throws InterruptedException {
+        queue.put(new Queued(file, done));
+    }
+
+    private void persistLoop() {
+        List<Queued> batch = new ArrayList<>(filesPerCommit);
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                Queued first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                fill(batch, first);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Persist stage failed: {}", e.getMessage(), e);
+            } finally {
+                for (Queued queued : batch) {
+                    queued.done().run();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds queued files to the batch after {@code first}, waiting up to {@code linger-ms} for more,
+     * until it holds {@code files-per-commit} files or {@code max-rows-per-commit} rows.
+     */
+    private void fill(List<Queued> batch, Queued first) throws InterruptedException {
+        batch.add(first);
+        long rows = first.file().rows();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (batch.size() < Math.max(1, filesPerCommit) && (maxRowsPerCommit <= 0 || rows < maxRowsPerCommit)) {
+            long wait = deadline - System.nanoTime();
+            Queued next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            rows += next.file().rows();
+        }
+    }
+
+    private void commit(List<Queued> batch) {
+        if (batch.size() > 1) {
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Transaction of {} files failed ({}), writing them one by one", batch.size(), e.getMessage());
+            }
+        }
+        for (Queued queued : batch) {
+            try {
+                write(List.of(queued));
+            } catch (RuntimeException e) {
+                fileProcessorService.rolledBack(queued.file().path(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes the files in one transaction. They are finished only once it has committed, so a file
+     * is moved to backup and counted as saved only if its rows are in the database.
+     */
+    private void write(List<Queued> files) {
+        long[] written = new long[1];
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            Set<String> touched = new HashSet<>();
+            for (Queued queued : files) {
+                touched.addAll(fileProcessorService.write(queued.file()));
+            }
+            eventPublisher.publishEvent(new InsuredProductsChangedEvent(touched));
+            written[0] = System.nanoTime();
+        });
+        metrics.recordStage(IngestionMetrics.Stage.COMMIT, System.nanoTime() - written[0]);
+        long rows = 0;
+        for (Queued queued : files) {
+            fileProcessorService.finish(queued.file());
+            rows += queued.file().rows();
+        }
+        metrics.recordCommit(files.size(), rows);
+    }
+
+    /** Writes what is already queued before shutdown. */
+    @PreDestroy
+    void stop() {
+        if (persisters == null) {
+            return;
+        }
+        stopping = true;
+        persisters.shutdown();
+        try {
+            if (!persisters.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("{} parsed files were not written before shutdown", queue.size());
+                persisters.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            persisters.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
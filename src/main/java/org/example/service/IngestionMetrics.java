@@ -0,0 +1,218 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters of the ingestion pipeline, exposed at {@code /actuator/prometheus}:
+ * <ul>
+ *     <li>{@code ingest.stage} timer per {@link Stage}, with percentile histograms</li>
+ *     <li>{@code ingest.file.size}, {@code ingest.file.events} and {@code ingest.file.products}
+ *     summaries of committed files</li>
+ *     <li>{@code ingest.commit.files} and {@code ingest.commit.rows} summaries of pipelined transactions</li>
+ *     <li>{@code ingest.files} counter per {@link Outcome}</li>
+ *     <li>{@code ingest.invalid.values} counter per {@link Field} of values that could not be parsed</li>
+ *     <li>{@code ingest.poll.decisions} counter per {@link PollDecision}</li>
+ *     <li>{@code ingest.backlog}, {@code ingest.in.flight}, {@code ingest.backup.pending},
+ *     {@code ingest.pipeline.persist.queue}, {@code ingest.poll.delay} and {@code ingest.run.files} gauges</li>
+ * </ul>
+ */
+@Component
+public class IngestionMetrics {
+
+    public enum Stage {
+        /** listing the input directory */
+        SCAN,
+        /** hashing a file and looking it up in the processed-file ledger */
+        DEDUP,
+        /** opening a file */
+        OPEN,
+        /** XML to DTOs; for streamed files the reading time outside the map and persist callbacks */
+        PARSE,
+        /** DTOs to entities */
+        MAP,
+        /** statements of the file's transaction */
+        PERSIST,
+        /** end of processing to transaction completion, including the projection refresh; per transaction in pipelined mode */
+        COMMIT,
+        /** move to the backup directory, after commit on a backup thread */
+        BACKUP
+    }
+
+    public enum Outcome {
+        SAVED,
+        /** identical to the file that last wrote its request, moved to backup unparsed */
+        DUPLICATE,
+        /** unreadable or without requestDetails */
+        SKIPPED,
+        /** access denied or rolled back, left for a later run */
+        DEFERRED,
+        FAILED
+    }
+
+    /** Why the adaptive poll chose its next delay. */
+    public enum PollDecision {
+        /** nothing found, the delay doubles up to {@code app.poll-interval-ms} */
+        IDLE,
+        /** more files than in the previous run, poll again after the minimum delay */
+        GROWING,
+        /** files found but fewer than before, the delay halves down to the minimum */
+        DRAINING,
+        /** the run stopped at its budget with files left, poll again after the minimum delay */
+        BUDGET
+    }
+
+    public enum Field {
+        ACCEPT_DATE,
+        PRICE,
+        START_DATE,
+        END_DATE
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+    private final Map<Field, Counter> invalidValues = new EnumMap<>(Field.class);
+    private final Map<PollDecision, Counter> pollDecisions = new EnumMap<>(PollDecision.class);
+    private final DistributionSummary fileBytes;
+    private final DistributionSummary fileEvents;
+    private final DistributionSummary fileProducts;
+    private final DistributionSummary commitFiles;
+    private final DistributionSummary commitRows;
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("ingest.stage")
+                    .description("Time spent per ingestion stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("ingest.files")
+                    .description("Files processed, by outcome")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        for (Field field : Field.values()) {
+            invalidValues.put(field, Counter.builder("ingest.invalid.values")
+                    .description("Values that could not be parsed and were stored as null, by field")
+                    .tag("field", field.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        for (PollDecision decision : PollDecision.values()) {
+            pollDecisions.put(decision, Counter.builder("ingest.poll.decisions")
+                    .description("Delays chosen by the adaptive poll, by reason")
+                    .tag("decision", decision.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        fileBytes = DistributionSummary.builder("ingest.file.size")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue(4.0 * 1024 * 1024 * 1024)
+                .register(registry);
+        fileEvents = DistributionSummary.builder("ingest.file.events")
+                .baseUnit("events")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(10_000_000.0)
+                .register(registry);
+        fileProducts = DistributionSummary.builder("ingest.file.products")
+                .baseUnit("products")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100_000_000.0)
+                .register(registry);
+        commitFiles = DistributionSummary.builder("ingest.commit.files")
+                .description("Files written per transaction in pipelined mode")
+                .baseUnit("files")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(10_000.0)
+                .register(registry);
+        commitRows = DistributionSummary.builder("ingest.commit.rows")
+                .description("Rows written per transaction in pipelined mode")
+                .baseUnit("rows")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100_000_000.0)
+                .register(registry);
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordOutcome(Outcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    /** Returns {@code parsed}, counting it as invalid when {@code raw} had a value that did not parse. */
+    public <T> T checked(T parsed, String raw, Field field) {
+        if (parsed == null && !ValueParsers.isBlank(raw)) {
+            invalidValues.get(field).increment();
+        }
+        return parsed;
+    }
+
+    /**
+     * Records a file whose data was written in the current transaction. Inside a transaction the
+     * commit time, the outcome and the file summaries are recorded once it completes, so a file
+     * whose commit fails counts as failed.
+     */
+    public void recordFileWritten(long bytes, long events, long products) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordSaved(bytes, events, products);
+            return;
+        }
+        long started = System.nanoTime();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                recordStage(Stage.COMMIT, System.nanoTime() - started);
+                if (status == STATUS_COMMITTED) {
+                    recordSaved(bytes, events, products);
+                } else {
+                    recordOutcome(Outcome.FAILED);
+                }
+            }
+        });
+    }
+
+    public void recordPollDecision(PollDecision decision) {
+        pollDecisions.get(decision).increment();
+    }
+
+    /** Records a committed transaction of the pipeline's persist stage. */
+    public void recordCommit(int files, long rows) {
+        commitFiles.record(files);
+        commitRows.record(rows);
+    }
+
+    public <T> void gauge(String name, String description, T state, ToDoubleFunction<T> value) {
+        Gauge.builder(name, state, value).description(description).register(registry);
+    }
+
+    /** Registers a counter whose count {@code state} keeps itself. */
+    public <T> void functionCounter(String name, String description, T state, ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, state, count).description(description).register(registry);
+    }
+
+    private void recordSaved(long bytes, long events, long products) {
+        recordOutcome(Outcome.SAVED);
+        fileBytes.record(bytes);
+        fileEvents.record(events);
+        fileProducts.record(products);
+    }
+}
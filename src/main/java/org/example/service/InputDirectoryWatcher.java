@@ -0,0 +1,189 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Event-driven ingestion: picks up request files as soon as they are fully written instead of
+ * waiting for the next scheduled poll. A file is handed to {@link FileBatchProcessor#dispatch(Path)}
+ * once its size and modification time have stayed the same for {@code app.watch.settle-ms}, which
+ * covers both slow writers and files renamed into place. The scheduled poll keeps running as a
+ * reconciliation sweep, and an overflowed watch key triggers one immediately.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class InputDirectoryWatcher {
+
+    @Value("${app.input-dir:input}")
+    private String inputDir;
+
+    @Value("${app.watch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.watch.settle-ms:250}")
+    private long settleMs;
+
+    private final FileBatchProcessor fileBatchProcessor;
+
+    private final Map<Path, PendingFile> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweepRequested = new AtomicBoolean();
+
+    private WatchService watchService;
+    private Thread watchThread;
+    private ScheduledExecutorService stabilizer;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || watchService != null) {
+            return;
+        }
+        Path dir = Paths.get(inputDir);
+        try {
+            Files.createDirectories(dir);
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("Could not watch {}, relying on scheduled polling: {}", dir, e.getMessage(), e);
+            watchService = null;
+            return;
+        }
+
+        stabilizer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "input-watch-dispatch");
+            t.setDaemon(true);
+            return t;
+        });
+        long checkEvery = Math.max(10, settleMs / 2);
+        stabilizer.scheduleWithFixedDelay(this::dispatchSettledFiles, checkEvery, checkEvery, TimeUnit.MILLISECONDS);
+
+        watchThread = new Thread(() -> watchLoop(dir), "input-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("Watching {} for new request files (settle {} ms)", dir, settleMs);
+    }
+
+    private void watchLoop(Path dir) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        log.warn("Watch events overflowed for {}, scheduling a reconciliation sweep", dir);
+                        sweepRequested.set(true);
+                        continue;
+                    }
+                    Path name = (Path) event.context();
+                    if (name.toString().endsWith(".xml")) {
+                        track(dir.resolve(name));
+                    }
+                }
+                if (!key.reset()) {
+                    log.error("Watch key for {} is no longer valid, relying on scheduled polling", dir);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Records an event for the file; it is dispatched once it has settled. */
+    void track(Path file) {
+        pending.computeIfAbsent(file, p -> new PendingFile()).touch();
+    }
+
+    /**
+     * Runs on the dispatch thread: compares each pending file with its previous observation and
+     * dispatches those that have settled. Files that disappeared (moved or deleted) are dropped.
+     */
+    void dispatchSettledFiles() {
+        try {
+            if (sweepRequested.getAndSet(false)) {
+                fileBatchProcessor.processFiles();
+            }
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<Path, PendingFile>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, PendingFile> entry = it.next();
+                Path path = entry.getKey();
+                PendingFile file = entry.getValue();
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    it.remove();
+                    continue;
+                }
+                if (file.isSettled(attrs, now, settleMs)) {
+                    it.remove();
+                    fileBatchProcessor.dispatch(path);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching watched files: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        stabilizer.shutdownNow();
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Error closing watch service: {}", e.getMessage());
+        }
+        watchService = null;
+    }
+
+    private static final class PendingFile {
+        private volatile long lastEventAt;
+        private long lastSize = -1;
+        private long lastModified = -1;
+
+        void touch() {
+            lastEventAt = System.currentTimeMillis();
+        }
+
+        /** True once no event arrived for the settle period and size/mtime match the previous check. */
+        boolean isSettled(BasicFileAttributes attrs, long now, long settleMs) {
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            boolean unchanged = size == lastSize && modified == lastModified;
+            lastSize = size;
+            lastModified = modified;
+            return unchanged && now - lastEventAt >= settleMs;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of the serialized {@link InsuredProductsPayload} per insuredId, with a
+ * time-to-live. Unknown insureds are cached too (as {@code null}) so repeated 404s stay off the
+ * database.
+ * <p>
+ * Entries are invalidated after each ingestion transaction commits, for exactly the insuredIds
+ * that file touched. A per-stripe generation counter stops a reader that loaded data before the
+ * commit from caching it after the invalidation has run.
+ * <p>
+ * {@code app.cache.products.max-entries=0} disables caching. Hits, misses, evictions, invalidations
+ * and the size are published as {@code products.cache.*} meters.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InsuredProductsCache {
+
+    private static final int STRIPES = 1024;
+
+    @Value("${app.cache.products.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.cache.products.ttl-ms:600000}")
+    private long ttlMs;
+
+    private final IngestionMetrics metrics;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            boolean evict = size() > maxEntries;
+            if (evict) {
+                evictions.increment();
+            }
+            return evict;
+        }
+    };
+
+    @PostConstruct
+    void registerMeters() {
+        metrics.functionCounter("products.cache.hits", "Products responses served from the cache", hits, LongAdder::sum);
+        metrics.functionCounter("products.cache.misses", "Products responses loaded from the database", misses, LongAdder::sum);
+        metrics.functionCounter("products.cache.evictions", "Cached products responses evicted by the size limit", evictions, LongAdder::sum);
+        metrics.functionCounter("products.cache.invalidations", "Cached products responses invalidated after a commit", invalidations, LongAdder::sum);
+        metrics.gauge("products.cache.size", "Products responses currently cached", this, InsuredProductsCache::size);
+    }
+
+    /** Returns the cached response, or loads it with {@code loader} and caches the result. */
+    public InsuredProductsPayload get(String insuredId, Function<String, InsuredProductsPayload> loader) {
+        if (maxEntries <= 0) {
+            return loader.apply(insuredId);
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry cached = entries.get(insuredId);
+            if (cached != null) {
+                if (now - cached.expiresAt < 0) {
+                    hits.increment();
+                    return cached.value;
+                }
+                entries.remove(insuredId);
+            }
+        }
+        misses.increment();
+
+        int stripe = stripe(insuredId);
+        long generation = generations.get(stripe);
+        InsuredProductsPayload value = loader.apply(insuredId);
+        synchronized (entries) {
+            if (generations.get(stripe) == generation) {
+                entries.put(insuredId, new Entry(value, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Caches, with one {@code loader} call, the payloads of those {@code insuredIds} that are not
+     * cached yet. Insureds the loader does not return, or that are invalidated meanwhile, are left out.
+     */
+    public void preload(Collection<String> insuredIds, Function<List<String>, Map<String, InsuredProductsPayload>> loader) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        List<String> missing = new ArrayList<>(insuredIds.size());
+        synchronized (entries) {
+            for (String insuredId : insuredIds) {
+                if (insuredId != null && !entries.containsKey(insuredId)) {
+                    missing.add(insuredId);
+                }
+            }
+        }
+        long[] generation = new long[missing.size()];
+        for (int i = 0; i < generation.length; i++) {
+            generation[i] = generations.get(stripe(missing.get(i)));
+        }
+        Map<String, InsuredProductsPayload> loaded = loader.apply(missing);
+        long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        synchronized (entries) {
+            for (int i = 0; i < generation.length; i++) {
+                String insuredId = missing.get(i);
+                InsuredProductsPayload value = loaded.get(insuredId);
+                if (value != null && generations.get(stripe(insuredId)) == generation[i]) {
+                    entries.putIfAbsent(insuredId, new Entry(value, expiresAt));
+                }
+            }
+        }
+    }
+
+    /** Up to {@code limit} cached insuredIds that have products, most recently used first. */
+    public List<String> hottest(int limit) {
+        List<String> hottest = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().value != null) {
+                    hottest.add(e.getKey());
+                }
+            }
+        }
+        Collections.reverse(hottest);
+        return hottest.size() > limit ? new ArrayList<>(hottest.subList(0, limit)) : hottest;
+    }
+
+    public void invalidate(Collection<String> insuredIds) {
+        synchronized (entries) {
+            for (String insuredId : insuredIds) {
+                if (insuredId == null) {
+                    continue;
+                }
+                generations.incrementAndGet(stripe(insuredId));
+                if (entries.remove(insuredId) != null) {
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /** Drops every entry, e.g. after a bulk load that published no per-file events. */
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (int i = 0; i < STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onInsuredProductsChanged(InsuredProductsChangedEvent event) {
+        invalidate(event.getInsuredIds());
+        log.debug("Invalidated cached products of {} insureds", event.getInsuredIds().size());
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long invalidationCount() {
+        return invalidations.sum();
+    }
+
+    private static int stripe(String insuredId) {
+        return (insuredId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private static final class Entry {
+        private final InsuredProductsPayload value;
+        private final long expiresAt;
+
+        private Entry(InsuredProductsPayload value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Carries the hot part of {@link InsuredProductsCache} across restarts: the most recently used
+ * insuredIds are written to {@code app.cache.products.warm-file} on shutdown and loaded back in
+ * bulk once the application is ready. Requests are served lazily while warming runs.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InsuredProductsCacheWarmer {
+
+    private final InsuredProductsCache insuredProductsCache;
+    private final ProductsService productsService;
+
+    // empty disables warming
+    @Value("${app.cache.products.warm-file:}")
+    private String warmFile;
+
+    @Value("${app.cache.products.max-entries:10000}")
+    private int maxEntries;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        if (warmFile.isBlank() || !Files.isRegularFile(Paths.get(warmFile))) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            List<String> insuredIds = Files.readAllLines(Paths.get(warmFile));
+            List<String> hottest = insuredIds.subList(0, Math.min(insuredIds.size(), maxEntries));
+            productsService.warmCache(hottest);
+            log.info("Warmed products cache with {} insureds in {} ms", hottest.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Could not warm products cache from {}: {}", warmFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void save() {
+        if (warmFile.isBlank()) {
+            return;
+        }
+        Path target = Paths.get(warmFile);
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            List<String> hottest = insuredProductsCache.hottest(maxEntries);
+            Files.write(part, hottest);
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} hot insureds to {}", hottest.size(), target);
+        } catch (IOException e) {
+            log.warn("Could not save hot insureds to {}: {}", target, e.getMessage());
+        }
+    }
+}
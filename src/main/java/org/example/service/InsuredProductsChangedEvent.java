@@ -0,0 +1,16 @@
+package org.example.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Published inside the ingestion transaction with every insuredId whose products were added,
+ * replaced or removed by the files written in one transaction.
+ */
+@Getter
+@AllArgsConstructor
+public class InsuredProductsChangedEvent {
+    private final Set<String> insuredIds;
+}
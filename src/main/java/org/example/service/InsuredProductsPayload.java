@@ -0,0 +1,102 @@
+package org.example.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The ready-to-send UTF-8 JSON of an insured's products, with its strong ETag and, when worth it,
+ * a gzip-compressed copy, so serving a request does not involve Jackson or compression. The gzip
+ * copy is a different representation and carries its own strong ETag, the JSON one with a
+ * {@code -gzip} suffix; an If-None-Match listing either one matches.
+ */
+public final class InsuredProductsPayload {
+
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+    private final String gzipEtag;
+
+    private InsuredProductsPayload(byte[] json, byte[] gzip, String etag) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = etag;
+        this.gzipEtag = gzipEtagOf(etag);
+    }
+
+    /**
+     * @param gzipMinBytes bodies at least this large also get a gzip copy; {@code 0} disables it
+     */
+    public static InsuredProductsPayload of(byte[] json, String etag, int gzipMinBytes) {
+        byte[] gzip = null;
+        if (gzipMinBytes > 0 && json.length >= gzipMinBytes) {
+            gzip = gzip(json);
+            if (gzip.length >= json.length) {
+                gzip = null;
+            }
+        }
+        return new InsuredProductsPayload(json, gzip, etag);
+    }
+
+    /** Quoted hex of the first 128 bits of the SHA-256 of {@code json}. */
+    public static String etagOf(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return '"' + HexFormat.of().formatHex(digest, 0, 16) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    /** The gzip-compressed JSON, or null if the body is too small to be worth compressing. */
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    /** Whether an If-None-Match header value lists the ETag of the JSON or of the gzip copy (weak comparison). */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String gzipEtagOf(String etag) {
+        return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-gzip\"" : etag + "-gzip";
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
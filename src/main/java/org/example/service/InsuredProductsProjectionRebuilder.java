@@ -0,0 +1,66 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.repository.EventRepository;
+import org.example.repository.InsuredProductsProjectionRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Regenerates {@code insured_products_projection} from request_details/event/product, e.g. after
+ * a schema change: start the application with {@code --app.projection.rebuild=true}.
+ * <p>
+ * Runs once all beans are created but before the scheduler and the web server start, so neither
+ * ingestion nor readers see a half-built projection.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InsuredProductsProjectionRebuilder implements SmartInitializingSingleton {
+
+    private static final int PAGE_SIZE = 500;
+
+    private final EventRepository eventRepository;
+    private final InsuredProductsProjectionRepository projectionRepository;
+    private final InsuredProductsProjectionService projectionService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.projection.rebuild:false}")
+    private boolean rebuildOnStartup;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (rebuildOnStartup && projectionService.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /** Refreshes every insured page by page, one transaction per page, then drops orphaned rows. */
+    public int rebuild() {
+        long started = System.currentTimeMillis();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int insureds = 0;
+        String after = "";
+        while (true) {
+            String from = after;
+            List<String> page = eventRepository.findInsuredIdsAfter(from, PageRequest.ofSize(PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            tx.executeWithoutResult(s -> projectionService.refresh(page));
+            insureds += page.size();
+            after = page.get(page.size() - 1);
+        }
+        Integer removed = tx.execute(s -> projectionRepository.deleteWithoutEvents());
+        log.info("Rebuilt products projection for {} insureds ({} stale rows removed) in {} ms",
+                insureds, removed, System.currentTimeMillis() - started);
+        return insureds;
+    }
+}
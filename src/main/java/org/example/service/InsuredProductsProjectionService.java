@@ -0,0 +1,169 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.domain.InsuredProductRow;
+import org.example.domain.InsuredProductsResponse;
+import org.example.entities.InsuredProductsProjectionEntity;
+import org.example.repository.EventRepository;
+import org.example.repository.InsuredProductsProjectionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Maintains {@code insured_products_projection}: one row per insuredId holding the serialized
+ * products response already grouped by source company, so reads are a primary-key lookup and
+ * the stored bytes are sent as they are.
+ * <p>
+ * Rows are recomputed from request_details/event/product for the insureds touched by a file,
+ * before that file's transaction commits, so the projection never disagrees with committed data.
+ * Files ingested concurrently that touch the same insured are serialized from that point until
+ * their commit, so the second one recomputes the row from the first one's committed events
+ * instead of overwriting them with a row built from its own view only. With
+ * {@code app.cluster.enabled} the existing rows are also locked in the database, which serializes
+ * files ingested on different nodes; two nodes creating the same new row at once make one of the
+ * transactions fail, and its file is processed again.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class InsuredProductsProjectionService {
+
+    private static final int SLICE_SIZE = 500;
+    private static final int LOCK_STRIPES = 1024;
+
+    private final EventRepository eventRepository;
+    private final InsuredProductsProjectionRepository projectionRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    private final ReentrantLock[] locks = newLocks();
+
+    @Value("${app.projection.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean clustered;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onInsuredProductsChanged(InsuredProductsChangedEvent event) {
+        if (enabled) {
+            lockUntilCompletion(event.getInsuredIds());
+            refresh(event.getInsuredIds());
+        }
+    }
+
+    /** Takes the insureds' lock stripes in ascending order and releases them once the transaction completes. */
+    private void lockUntilCompletion(Collection<String> insuredIds) {
+        int[] stripes = insuredIds.stream()
+                .filter(Objects::nonNull)
+                .mapToInt(id -> (id.hashCode() & 0x7fffffff) % LOCK_STRIPES)
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    locks[stripes[i]].unlock();
+                }
+            }
+        });
+    }
+
+    /** Recomputes the rows of the given insureds inside the current transaction. */
+    public void refresh(Collection<String> insuredIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(insuredIds));
+        ids.removeIf(Objects::isNull);
+        if (clustered) {
+            // slices are locked one after another, so every node must take them in the same order
+            Collections.sort(ids);
+        }
+        for (int from = 0; from < ids.size(); from += SLICE_SIZE) {
+            refreshSlice(ids.subList(from, Math.min(ids.size(), from + SLICE_SIZE)));
+        }
+    }
+
+    public Optional<InsuredProductsProjectionEntity> find(String insuredId) {
+        return projectionRepository.findById(insuredId);
+    }
+
+    public List<InsuredProductsProjectionEntity> findAll(Collection<String> insuredIds) {
+        return projectionRepository.findAllById(insuredIds);
+    }
+
+    private void refreshSlice(List<String> insuredIds) {
+        // locked before the events are read, so they include what the previous holder committed
+        Map<String, InsuredProductsProjectionEntity> existing = new HashMap<>();
+        List<InsuredProductsProjectionEntity> projections = clustered
+                ? projectionRepository.lockAllById(insuredIds) : projectionRepository.findAllById(insuredIds);
+        for (InsuredProductsProjectionEntity p : projections) {
+            existing.put(p.getInsuredId(), p);
+        }
+        Map<String, List<InsuredProductRow>> rowsByInsured = new HashMap<>();
+        for (InsuredProductRow row : eventRepository.findProductRowsByInsuredIdIn(insuredIds)) {
+            rowsByInsured.computeIfAbsent(row.getInsuredId(), k -> new ArrayList<>()).add(row);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (String insuredId : insuredIds) {
+            List<InsuredProductRow> rows = rowsByInsured.get(insuredId);
+            InsuredProductsProjectionEntity projection = existing.get(insuredId);
+            if (rows == null) {
+                if (projection != null) {
+                    projectionRepository.delete(projection);
+                }
+                continue;
+            }
+            byte[] payload = write(ProductsService.groupProducts(insuredId, rows));
+            String etag = InsuredProductsPayload.etagOf(payload);
+            if (projection == null) {
+                projection = new InsuredProductsProjectionEntity();
+                projection.setInsuredId(insuredId);
+                projection.setPayload(payload);
+                projection.setEtag(etag);
+                projection.setUpdatedAt(now);
+                entityManager.persist(projection);
+            } else if (!etag.equals(projection.getEtag())) {
+                projection.setPayload(payload);
+                projection.setEtag(etag);
+                projection.setUpdatedAt(now);
+            }
+        }
+    }
+
+    private static ReentrantLock[] newLocks() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private byte[] write(InsuredProductsResponse response) {
+        try {
+            return objectMapper.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
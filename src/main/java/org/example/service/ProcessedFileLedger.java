@@ -0,0 +1,96 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.entities.ProcessedFileEntity;
+import org.example.repository.ProcessedFileRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HexFormat;
+
+/**
+ * Recognizes files that were already ingested. Each request keeps the content hash of the file
+ * that last wrote it, so dropping the same file again is a single indexed lookup, while an older
+ * version dropped after a newer one is processed again.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProcessedFileLedger {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ProcessedFileRepository processedFileRepository;
+
+    @Value("${app.ingest.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ingest.mmap-threshold-bytes:4194304}")
+    private long mmapThresholdBytes;
+
+    /** SHA-256 of the file (decompressed, if archived) as lowercase hex, or null when deduplication is disabled. */
+    public String hash(Path path) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream is = FileInput.open(path, Files.size(path), 0, mmapThresholdBytes)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } catch (InternalError e) {
+            throw FileInput.truncated(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Same as {@link #hash(Path)} for a file already read into memory. */
+    public String hash(byte[] content) {
+        return enabled ? HexFormat.of().formatHex(sha256().digest(content)) : null;
+    }
+
+    public boolean isProcessed(String contentHash) {
+        return contentHash != null && processedFileRepository.existsByContentHash(contentHash);
+    }
+
+    /** Records, in the current transaction, that {@code requestId} now holds the file's content. */
+    public void record(String requestId, String contentHash, Path path, long size) {
+        if (contentHash == null) {
+            return;
+        }
+        ProcessedFileEntity entry = new ProcessedFileEntity();
+        entry.setRequestId(requestId);
+        entry.setContentHash(contentHash);
+        entry.setFileName(String.valueOf(path.getFileName()));
+        entry.setSize(size);
+        entry.setProcessedAt(LocalDateTime.now());
+        processedFileRepository.save(entry);
+    }
+
+    /**
+     * Forgets, in the current transaction, the files that wrote {@code requestIds}, whose stored
+     * content another request changed, so dropping those files again applies them again.
+     */
+    public void forget(Collection<String> requestIds) {
+        if (!requestIds.isEmpty()) {
+            processedFileRepository.deleteByRequestIdIn(requestIds);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
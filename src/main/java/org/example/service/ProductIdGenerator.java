@@ -0,0 +1,50 @@
+package org.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Assigns product primary keys, stored as 16-byte UUID columns.
+ * <p>
+ * In {@code v7} mode (the default) ids are time-ordered UUIDv7 (RFC 9562): a 48-bit millisecond
+ * timestamp followed by random bits from {@link ThreadLocalRandom}. New rows land at the right
+ * edge of the primary-key index instead of at random pages, and no {@code SecureRandom} is
+ * shared between ingestion threads. {@code random} keeps the former {@link UUID#randomUUID()}.
+ */
+@Component
+public class ProductIdGenerator {
+
+    @Value("${app.persistence.product-ids:v7}")
+    private String strategy;
+
+    public UUID next() {
+        return "random".equalsIgnoreCase(strategy) ? UUID.randomUUID() : uuidV7(System.currentTimeMillis());
+    }
+
+    static UUID uuidV7(long epochMillis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // unix_ts_ms (48) | ver (4) | rand_a (12)
+        long high = (epochMillis << 16) | 0x7000L | (random.nextInt() & 0x0FFFL);
+        // var (2) | rand_b (62)
+        long low = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(high, low);
+    }
+
+    /** The UUID in {@code text}, or null if it is not one in canonical 36-character form. */
+    public static UUID parse(String text) {
+        if (text == null || text.length() != 36) {
+            return null;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = text.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : Character.digit(c, 16) < 0) {
+                return null;
+            }
+        }
+        return UUID.fromString(text);
+    }
+}
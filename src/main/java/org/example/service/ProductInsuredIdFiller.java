@@ -0,0 +1,32 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies each event's insured_id onto its product rows that have none, i.e. rows stored before
+ * product carried the column, so the products page query finds them. Runs at startup before the
+ * scheduler and the web server start; once every row is filled it is a single index lookup.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ProductInsuredIdFiller implements SmartInitializingSingleton {
+
+    private static final String FILL =
+            "update product p set insured_id = (select e.insured_id from event e where e.id = p.event_id) "
+                    + "where p.insured_id is null and p.event_id is not null";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        int filled = jdbcTemplate.update(FILL);
+        if (filled > 0) {
+            log.info("Filled insured_id of {} stored products", filled);
+        }
+    }
+}
@@ -1,42 +1,212 @@
 package org.example.service;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
 import org.example.domain.CompanyGroup;
+import org.example.domain.InsuredProductRow;
+import org.example.domain.InsuredProductsPage;
 import org.example.domain.InsuredProductsResponse;
+import org.example.domain.ProductFilter;
 import org.example.domain.ProductResponse;
 import org.example.dto.EventDto;
 import org.example.dto.ProductDto;
 import org.example.entities.EventEntity;
+import org.example.entities.InsuredProductsProjectionEntity;
 import org.example.entities.ProductEntity;
 import org.example.repository.EventRepository;
+import org.example.repository.ProductPageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class ProductsService {
+    private static final int BATCH_SLICE_SIZE = 500;
+
     private final EventRepository eventRepository;
+    private final InsuredProductsCache insuredProductsCache;
+    private final InsuredProductsProjectionService projectionService;
+    private final ObjectMapper objectMapper;
+    private final ProductPageRepository productPageRepository;
+    private final IngestionMetrics metrics;
+    private final ProductIdGenerator productIdGenerator;
+
+    // responses at least this large are also kept gzip-compressed; 0 disables compression
+    @Value("${app.products.gzip-min-bytes:1024}")
+    private int gzipMinBytes;
 
 
-    public ResponseEntity<?> getProductsByInsured(String insuredId) {
-        List<EventEntity> events = eventRepository.findByInsuredId(insuredId);
-        if (events.isEmpty()) {
+    /**
+     * Sends the cached JSON bytes of an insured's products: 304 when {@code ifNoneMatch} lists
+     * their ETag, the gzip copy with its own ETag when the client accepts it and one exists.
+     */
+    public ResponseEntity<byte[]> getProductsByInsured(String insuredId, String ifNoneMatch, boolean acceptsGzip) {
+        InsuredProductsPayload payload = insuredProductsCache.get(insuredId, this::loadPayload);
+        if (payload == null) {
             return ResponseEntity.notFound().build();
         }
+        boolean gzip = acceptsGzip && payload.getGzip() != null;
+        String etag = gzip ? payload.getGzipEtag() : payload.getEtag();
+        if (payload.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return ok.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.getGzip());
+        }
+        return ok.body(payload.getJson());
+    }
 
-        Map<String, List<ProductResponse>> grouped = new HashMap<>();
-        for (EventEntity e : events) {
-            String source = e.getRequestDetails() != null ? e.getRequestDetails().getSourceCompany() : "unknown";
-            List<ProductResponse> prs = grouped.computeIfAbsent(source, k -> new ArrayList<>());
-            if (e.getProducts() != null) {
-                for (ProductEntity p : e.getProducts()) {
-                    prs.add(new ProductResponse(p.getId(), p.getType(), p.getPrice(), p.getStartDate(), p.getEndDate(), e.getId()));
+    /** Reads the serialized products of an insured, or returns null if it has no events. */
+    private InsuredProductsPayload loadPayload(String insuredId) {
+        if (projectionService.isEnabled()) {
+            return projectionService.find(insuredId)
+                    .map(p -> InsuredProductsPayload.of(p.getPayload(), p.getEtag(), gzipMinBytes))
+                    .orElse(null);
+        }
+        InsuredProductsResponse products = groupProducts(insuredId, eventRepository.findProductRowsByInsuredId(insuredId));
+        if (products == null) {
+            return null;
+        }
+        byte[] json = serialize(products);
+        return InsuredProductsPayload.of(json, InsuredProductsPayload.etagOf(json), gzipMinBytes);
+    }
+
+    /**
+     * Writes the products of many insureds to {@code out}, as a JSON array or, with {@code ndjson},
+     * one JSON document per line. Ids are resolved {@value #BATCH_SLICE_SIZE} per query and each
+     * slice is flushed before the next one is read, so the answer is never held in memory as a
+     * whole. Insureds without events are left out; the rest keep their request order.
+     */
+    public void writeProductsBatch(Collection<String> insuredIds, boolean ndjson, OutputStream out) throws IOException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(insuredIds));
+        ids.removeIf(Objects::isNull);
+        boolean first = true;
+        if (!ndjson) {
+            out.write('[');
+        }
+        for (int from = 0; from < ids.size(); from += BATCH_SLICE_SIZE) {
+            List<String> slice = ids.subList(from, Math.min(ids.size(), from + BATCH_SLICE_SIZE));
+            Map<String, byte[]> found = loadJsonBatch(slice);
+            for (String insuredId : slice) {
+                byte[] json = found.get(insuredId);
+                if (json == null) {
+                    continue;
+                }
+                if (!ndjson && !first) {
+                    out.write(',');
+                }
+                out.write(json);
+                if (ndjson) {
+                    out.write('\n');
                 }
+                first = false;
+            }
+            out.flush();
+        }
+        if (!ndjson) {
+            out.write(']');
+        }
+        out.flush();
+    }
+
+    /** Loads the responses of {@code insuredIds} into the cache, {@value #BATCH_SLICE_SIZE} per query. */
+    public void warmCache(List<String> insuredIds) {
+        for (int from = 0; from < insuredIds.size(); from += BATCH_SLICE_SIZE) {
+            List<String> slice = insuredIds.subList(from, Math.min(insuredIds.size(), from + BATCH_SLICE_SIZE));
+            insuredProductsCache.preload(slice, this::loadPayloadBatch);
+        }
+    }
+
+    private Map<String, InsuredProductsPayload> loadPayloadBatch(List<String> insuredIds) {
+        Map<String, InsuredProductsPayload> payloads = new HashMap<>();
+        if (projectionService.isEnabled()) {
+            for (InsuredProductsProjectionEntity p : projectionService.findAll(insuredIds)) {
+                payloads.put(p.getInsuredId(), InsuredProductsPayload.of(p.getPayload(), p.getEtag(), gzipMinBytes));
+            }
+            return payloads;
+        }
+        loadJsonBatch(insuredIds).forEach((insuredId, json) ->
+                payloads.put(insuredId, InsuredProductsPayload.of(json, InsuredProductsPayload.etagOf(json), gzipMinBytes)));
+        return payloads;
+    }
+
+    private Map<String, byte[]> loadJsonBatch(List<String> insuredIds) {
+        Map<String, byte[]> found = new HashMap<>();
+        if (projectionService.isEnabled()) {
+            for (InsuredProductsProjectionEntity p : projectionService.findAll(insuredIds)) {
+                found.put(p.getInsuredId(), p.getPayload());
+            }
+            return found;
+        }
+        Map<String, List<InsuredProductRow>> rowsByInsured = new HashMap<>();
+        for (InsuredProductRow row : eventRepository.findProductRowsByInsuredIdIn(insuredIds)) {
+            rowsByInsured.computeIfAbsent(row.getInsuredId(), k -> new ArrayList<>()).add(row);
+        }
+        rowsByInsured.forEach((insuredId, rows) -> found.put(insuredId, serialize(groupProducts(insuredId, rows))));
+        return found;
+    }
+
+    private byte[] serialize(InsuredProductsResponse products) {
+        try {
+            return objectMapper.writeValueAsBytes(products);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * One page of at most {@code limit} products matching {@code filter}, following the product
+     * id in {@code cursor}. 400 for a cursor that is not a product id, 404 only when the insured
+     * has no events at all.
+     */
+    public ResponseEntity<InsuredProductsPage> getProductsPage(String insuredId, ProductFilter filter, String cursor, int limit) {
+        UUID after = ProductIdGenerator.parse(cursor);
+        if (cursor != null && after == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        // one extra row tells whether another page follows
+        List<InsuredProductRow> rows = productPageRepository.findPage(insuredId, filter, after, limit + 1);
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            nextCursor = rows.get(limit - 1).getProductId();
+        }
+        if (rows.isEmpty() && cursor == null && !eventRepository.existsByInsuredId(insuredId)) {
+            return ResponseEntity.notFound().build();
+        }
+        InsuredProductsResponse grouped = groupProducts(insuredId, rows);
+        List<CompanyGroup> groups = grouped != null ? grouped.getGroups() : List.of();
+        return ResponseEntity.ok(new InsuredProductsPage(insuredId, groups, nextCursor));
+    }
+
+    /** Groups product rows by source company, or returns null if there are none. */
+    public static InsuredProductsResponse groupProducts(String insuredId, List<InsuredProductRow> rows) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        Map<String, List<ProductResponse>> grouped = new LinkedHashMap<>();
+        for (InsuredProductRow row : rows) {
+            String source = row.getSourceCompany() != null ? row.getSourceCompany() : "unknown";
+            List<ProductResponse> prs = grouped.computeIfAbsent(source, k -> new ArrayList<>());
+            // an event without products still contributes its (empty) company group
+            if (row.getProductId() != null) {
+                prs.add(new ProductResponse(row.getProductId(), row.getType(), row.getPrice(), row.getStartDate(), row.getEndDate(), row.getEventId()));
             }
         }
 
@@ -45,7 +215,7 @@ public class ProductsService {
                 .map(en -> new CompanyGroup(en.getKey(), en.getValue()))
                 .collect(Collectors.toList());
 
-        return ResponseEntity.ok(new InsuredProductsResponse(insuredId, response));
+        return new InsuredProductsResponse(insuredId, response);
     }
 
 
@@ -62,24 +232,13 @@ public class ProductsService {
 
     private ProductEntity getProductEntity(EventEntity e, ProductDto pd) {
         ProductEntity p = new ProductEntity();
-        p.setId(UUID.randomUUID().toString());
+        p.setId(productIdGenerator.next());
         p.setType(pd.getType());
-        try {
-            p.setPrice(new BigDecimal(pd.getPrice()));
-        } catch (Exception ex) {
-            p.setPrice(null);
-        }
-        try {
-            p.setStartDate(LocalDate.parse(pd.getStartDate()));
-        } catch (Exception ex) {
-            p.setStartDate(null);
-        }
-        try {
-            p.setEndDate(LocalDate.parse(pd.getEndDate()));
-        } catch (Exception ex) {
-            p.setEndDate(null);
-        }
+        p.setPrice(metrics.checked(ValueParsers.parseDecimal(pd.getPrice()), pd.getPrice(), IngestionMetrics.Field.PRICE));
+        p.setStartDate(metrics.checked(ValueParsers.parseDate(pd.getStartDate()), pd.getStartDate(), IngestionMetrics.Field.START_DATE));
+        p.setEndDate(metrics.checked(ValueParsers.parseDate(pd.getEndDate()), pd.getEndDate(), IngestionMetrics.Field.END_DATE));
         p.setEvent(e);
+        p.setInsuredId(e.getInsuredId());
         return p;
     }
 
@@ -2,6 +2,7 @@ package org.example.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.dto.RequestDetailsDto;
 import org.example.entities.EventEntity;
 import org.example.entities.ProductEntity;
 import org.example.entities.RequestDetailsEntity;
@@ -9,8 +10,6 @@ import org.example.dto.EventDto;
 import org.example.entities.XmlRootRequest;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 @Service
@@ -19,36 +18,34 @@ import java.util.List;
 public class RequestDetailsService {
 
     private final ProductsService productsService;
-    private final DateTimeFormatter acceptDateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSSSS");
+    private final IngestionMetrics metrics;
 
     public RequestDetailsEntity getRequestDetailsEntity(XmlRootRequest root) {
+        RequestDetailsEntity rd = getRequestDetailsHeader(root.getRequestDetails());
+        rd.setEvents(root.getEvents() != null ? getEventEntities(root.getEvents(), rd) : new ArrayList<>());
+        return rd;
+    }
+
+    public RequestDetailsEntity getRequestDetailsHeader(RequestDetailsDto dto) {
         RequestDetailsEntity rd = new RequestDetailsEntity();
-        rd.setId(root.getRequestDetails().getId());
-        // parse acceptDate tolerant
-        try {
-            rd.setAcceptDate(LocalDateTime.parse(root.getRequestDetails().getAcceptDate(), acceptDateFormatter));
-        } catch (Exception ex) {
-            try {
-                rd.setAcceptDate(LocalDateTime.parse(root.getRequestDetails().getAcceptDate()));
-            } catch (Exception ex2) {
-                rd.setAcceptDate(null);
-            }
-        }
-        rd.setSourceCompany(root.getRequestDetails().getSourceCompany());
-
-        List<EventEntity> events = new ArrayList<>();
-        if (root.getEvents() != null) {
-            for (EventDto ed : root.getEvents()) {
-                EventEntity e = getEventEntity(ed, rd);
-                List<ProductEntity> products = productsService.getProductEntities(ed, e);
-                e.setProducts(products);
-                events.add(e);
-            }
-        }
-        rd.setEvents(events);
+        rd.setId(dto.getId());
+        rd.setAcceptDate(metrics.checked(ValueParsers.parseDateTime(dto.getAcceptDate()),
+                dto.getAcceptDate(), IngestionMetrics.Field.ACCEPT_DATE));
+        rd.setSourceCompany(dto.getSourceCompany());
         return rd;
     }
 
+    public List<EventEntity> getEventEntities(List<EventDto> eventDtos, RequestDetailsEntity rd) {
+        List<EventEntity> events = new ArrayList<>(eventDtos.size());
+        for (EventDto ed : eventDtos) {
+            EventEntity e = getEventEntity(ed, rd);
+            List<ProductEntity> products = productsService.getProductEntities(ed, e);
+            e.setProducts(products);
+            events.add(e);
+        }
+        return events;
+    }
+
     private EventEntity getEventEntity(EventDto ed, RequestDetailsEntity rd) {
         EventEntity e = new EventEntity();
         e.setId(ed.getId());
@@ -0,0 +1,345 @@
+package org.example.service;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.example.entities.EventEntity;
+import org.example.entities.ProductEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.repository.EventRepository;
+import org.example.repository.RequestDetailsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persists requests inside the caller's transaction.
+ * <p>
+ * In {@code jdbc} mode (the default) rows are written with JDBC batches of
+ * {@code app.persistence.batch-size}, ordered request_details → event → product. A resubmitted
+ * request is applied as a diff against the stored one: events whose type, insuredId and products
+ * are unchanged keep their rows and product ids, changed events are rewritten and events no longer
+ * in the request are removed. An event id that already exists elsewhere is replaced with its
+ * products, which is what the cascading JPA merge did row by row; the request it is taken from no
+ * longer holds its file's content, so that file is forgotten by the {@link ProcessedFileLedger}.
+ * In {@code jpa} mode the entity graph is merged through the repositories instead.
+ * <p>
+ * Streamed requests are written in pieces and replace the stored request as a whole; in
+ * {@code jpa} mode the persistence context is flushed
+ * and cleared after every piece so managed entities never accumulate for large files.
+ * <p>
+ * Every method returns the insuredIds it touched: those of the written events plus those of
+ * stored events it replaced or removed. Unchanged events of a diffed request touch nothing.
+ */
+@Service
+@RequiredArgsConstructor
+public class RequestDetailsWriter {
+
+    private static final String DELETE_REQUEST_PRODUCTS =
+            "delete from product where event_id in (select id from event where request_id = ?)";
+    private static final String DELETE_REQUEST_EVENTS = "delete from event where request_id = ?";
+    private static final String DELETE_REQUEST = "delete from request_details where id = ?";
+    private static final String UPDATE_REQUEST =
+            "update request_details set accept_date = ?, source_company = ? where id = ?";
+    private static final String SELECT_REQUEST_SOURCE_COMPANY = "select source_company from request_details where id = ?";
+    private static final String SELECT_REQUEST_ROWS =
+            "select e.id, e.type, e.insured_id, p.id, p.type, p.price, p.start_date, p.end_date "
+                    + "from event e left join product p on p.event_id = e.id where e.request_id = ?";
+    private static final String INSERT_REQUEST =
+            "insert into request_details (id, accept_date, source_company) values (?, ?, ?)";
+    private static final String DELETE_EVENT_PRODUCTS = "delete from product where event_id = ?";
+    private static final String DELETE_EVENT = "delete from event where id = ?";
+    private static final String INSERT_EVENT =
+            "insert into event (id, type, insured_id, request_id) values (?, ?, ?, ?)";
+    private static final String INSERT_PRODUCT =
+            "insert into product (id, type, price, start_date, end_date, event_id, insured_id) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private final RequestDetailsRepository requestDetailsRepository;
+    private final EventRepository eventRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final ProcessedFileLedger ledger;
+
+    @Value("${app.persistence.mode:jdbc}")
+    private String mode;
+
+    @Value("${app.persistence.batch-size:500}")
+    private int batchSize;
+
+    /** Saves a fully mapped request with all of its events and products. */
+    public Set<String> save(RequestDetailsEntity requestDetails) {
+        List<EventEntity> events = requestDetails.getEvents() != null ? requestDetails.getEvents() : List.of();
+        if (!isJdbc()) {
+            Set<String> touched = findRequestInsuredIds(requestDetails.getId());
+            touched.addAll(takeOver(events));
+            addInsuredIds(touched, events);
+            requestDetailsRepository.save(requestDetails);
+            return touched;
+        }
+        List<String> stored = jdbcTemplate.queryForList(SELECT_REQUEST_SOURCE_COMPANY, String.class, requestDetails.getId());
+        if (!stored.isEmpty()) {
+            return applyDiff(requestDetails, events, stored.get(0));
+        }
+        replaceHeader(requestDetails);
+        return events.isEmpty() ? new HashSet<>() : insertEvents(events);
+    }
+
+    /**
+     * Stores the request header with an empty event list, so events from an earlier copy of the
+     * same request are removed, just like a full-graph save would do.
+     */
+    public Set<String> saveHeader(RequestDetailsEntity header) {
+        header.setEvents(new ArrayList<>());
+        Set<String> touched = findRequestInsuredIds(header.getId());
+        if (isJdbc()) {
+            replaceHeader(header);
+            return touched;
+        }
+        requestDetailsRepository.save(header);
+        entityManager.flush();
+        entityManager.clear();
+        return touched;
+    }
+
+    public Set<String> saveEvents(List<EventEntity> events) {
+        if (isJdbc()) {
+            return insertEvents(events);
+        }
+        Set<String> touched = takeOver(events);
+        addInsuredIds(touched, events);
+        eventRepository.saveAll(events);
+        entityManager.flush();
+        entityManager.clear();
+        return touched;
+    }
+
+    /**
+     * Writes only what differs from the stored request. A changed source company touches every
+     * insured of the request, since their products are grouped by it.
+     */
+    private Set<String> applyDiff(RequestDetailsEntity header, List<EventEntity> events, String storedSourceCompany) {
+        Map<String, StoredEvent> stored = findStoredEvents(header.getId());
+        jdbcTemplate.update(UPDATE_REQUEST, header.getAcceptDate(), header.getSourceCompany(), header.getId());
+        Set<String> touched = new HashSet<>();
+        if (!Objects.equals(storedSourceCompany, header.getSourceCompany())) {
+            for (StoredEvent s : stored.values()) {
+                touched.add(s.insuredId);
+            }
+        }
+
+        Map<String, EventEntity> byId = new LinkedHashMap<>();
+        for (EventEntity e : events) {
+            byId.put(e.getId(), e);
+        }
+        List<EventEntity> changed = new ArrayList<>();
+        for (EventEntity e : byId.values()) {
+            StoredEvent previous = stored.remove(e.getId());
+            if (previous == null || !previous.reuseIfUnchanged(e)) {
+                changed.add(e);
+            }
+        }
+        // what is left was dropped from the request
+        List<String> removed = new ArrayList<>(stored.keySet());
+        for (StoredEvent s : stored.values()) {
+            touched.add(s.insuredId);
+        }
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_EVENT_PRODUCTS, removed, batchSize, (ps, id) -> ps.setString(1, id));
+            jdbcTemplate.batchUpdate(DELETE_EVENT, removed, batchSize, (ps, id) -> ps.setString(1, id));
+        }
+        if (!changed.isEmpty()) {
+            touched.addAll(insertEvents(changed));
+        }
+        return touched;
+    }
+
+    private Map<String, StoredEvent> findStoredEvents(String requestId) {
+        Map<String, StoredEvent> stored = new HashMap<>();
+        jdbcTemplate.query(SELECT_REQUEST_ROWS, (RowCallbackHandler) rs -> {
+            StoredEvent event = stored.computeIfAbsent(rs.getString(1), id -> new StoredEvent());
+            event.type = rs.getString(2);
+            event.insuredId = rs.getString(3);
+            UUID productId = rs.getObject(4, UUID.class);
+            if (productId != null) {
+                event.products.add(new StoredProduct(productId, rs.getString(5), rs.getBigDecimal(6),
+                        rs.getObject(7, LocalDate.class), rs.getObject(8, LocalDate.class)));
+            }
+        }, requestId);
+        return stored;
+    }
+
+    private void replaceHeader(RequestDetailsEntity header) {
+        jdbcTemplate.update(DELETE_REQUEST_PRODUCTS, header.getId());
+        jdbcTemplate.update(DELETE_REQUEST_EVENTS, header.getId());
+        jdbcTemplate.update(DELETE_REQUEST, header.getId());
+        jdbcTemplate.update(INSERT_REQUEST, header.getId(), header.getAcceptDate(), header.getSourceCompany());
+    }
+
+    private Set<String> insertEvents(List<EventEntity> events) {
+        // a later event with the same id wins, as it would with consecutive merges
+        Map<String, EventEntity> byId = new LinkedHashMap<>();
+        for (EventEntity e : events) {
+            byId.put(e.getId(), e);
+        }
+        List<EventEntity> unique = new ArrayList<>(byId.values());
+        List<ProductEntity> products = new ArrayList<>();
+        for (EventEntity e : unique) {
+            if (e.getProducts() != null) {
+                products.addAll(e.getProducts());
+            }
+        }
+
+        List<String> existing = new ArrayList<>();
+        Set<String> touched = takeOver(unique, existing);
+        addInsuredIds(touched, unique);
+        if (!existing.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_EVENT_PRODUCTS, existing, batchSize, (ps, id) -> ps.setString(1, id));
+            jdbcTemplate.batchUpdate(DELETE_EVENT, existing, batchSize, (ps, id) -> ps.setString(1, id));
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT, unique, batchSize, (ps, e) -> {
+            ps.setString(1, e.getId());
+            ps.setString(2, e.getType());
+            ps.setString(3, e.getInsuredId());
+            ps.setString(4, e.getRequestDetails() != null ? e.getRequestDetails().getId() : null);
+        });
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT, products, batchSize, (ps, p) -> {
+            ps.setObject(1, p.getId());
+            ps.setString(2, p.getType());
+            ps.setBigDecimal(3, p.getPrice());
+            ps.setObject(4, p.getStartDate());
+            ps.setObject(5, p.getEndDate());
+            ps.setString(6, p.getEvent() != null ? p.getEvent().getId() : null);
+            ps.setString(7, p.getInsuredId());
+        });
+        return touched;
+    }
+
+    private Set<String> takeOver(List<EventEntity> events) {
+        return takeOver(events, new ArrayList<>());
+    }
+
+    /**
+     * Looks up which of {@code events} are already stored, adding their ids to {@code existing}, and
+     * forgets the files of the other requests they are taken from. Returns the stored insuredIds.
+     */
+    private Set<String> takeOver(List<EventEntity> events, List<String> existing) {
+        Map<String, ExistingEvent> stored = findExistingEvents(eventIds(events));
+        Set<String> touched = new HashSet<>();
+        Set<String> movedFrom = new HashSet<>();
+        for (EventEntity e : events) {
+            ExistingEvent previous = stored.get(e.getId());
+            if (previous == null) {
+                continue;
+            }
+            touched.add(previous.insuredId());
+            String requestId = e.getRequestDetails() != null ? e.getRequestDetails().getId() : null;
+            if (previous.requestId() != null && !previous.requestId().equals(requestId)) {
+                movedFrom.add(previous.requestId());
+            }
+        }
+        existing.addAll(stored.keySet());
+        ledger.forget(movedFrom);
+        return touched;
+    }
+
+    /** Stored events among {@code ids}, looked up {@code batchSize} ids per query. */
+    private Map<String, ExistingEvent> findExistingEvents(Collection<String> ids) {
+        Map<String, ExistingEvent> existing = new HashMap<>();
+        List<String> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += batchSize) {
+            List<String> slice = all.subList(from, Math.min(all.size(), from + batchSize));
+            String placeholders = String.join(",", Collections.nCopies(slice.size(), "?"));
+            jdbcTemplate.query("select id, insured_id, request_id from event where id in (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> existing.put(rs.getString(1), new ExistingEvent(rs.getString(2), rs.getString(3))),
+                    slice.toArray());
+        }
+        return existing;
+    }
+
+    private record ExistingEvent(String insuredId, String requestId) {
+    }
+
+    private Set<String> findRequestInsuredIds(String requestId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "select distinct insured_id from event where request_id = ?", String.class, requestId));
+    }
+
+    private static List<String> eventIds(List<EventEntity> events) {
+        List<String> ids = new ArrayList<>(events.size());
+        for (EventEntity e : events) {
+            ids.add(e.getId());
+        }
+        return ids;
+    }
+
+    private static void addInsuredIds(Set<String> touched, List<EventEntity> events) {
+        for (EventEntity e : events) {
+            touched.add(e.getInsuredId());
+        }
+    }
+
+    private boolean isJdbc() {
+        return "jdbc".equalsIgnoreCase(mode);
+    }
+
+    private static final class StoredEvent {
+        private String type;
+        private String insuredId;
+        private final List<StoredProduct> products = new ArrayList<>();
+
+        /**
+         * Whether {@code e} has the stored type, insuredId and the same products in any order. If
+         * so its products take over the stored ids, so the entity matches the rows that are kept.
+         */
+        boolean reuseIfUnchanged(EventEntity e) {
+            List<ProductEntity> incoming = e.getProducts() != null ? e.getProducts() : List.of();
+            if (!Objects.equals(type, e.getType()) || !Objects.equals(insuredId, e.getInsuredId())
+                    || incoming.size() != products.size()) {
+                return false;
+            }
+            UUID[] ids = new UUID[incoming.size()];
+            boolean[] used = new boolean[products.size()];
+            for (int i = 0; i < ids.length; i++) {
+                for (int j = 0; j < used.length && ids[i] == null; j++) {
+                    if (!used[j] && products.get(j).matches(incoming.get(i))) {
+                        used[j] = true;
+                        ids[i] = products.get(j).id;
+                    }
+                }
+                if (ids[i] == null) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                incoming.get(i).setId(ids[i]);
+            }
+            return true;
+        }
+    }
+
+    private record StoredProduct(UUID id, String type, BigDecimal price, LocalDate startDate, LocalDate endDate) {
+
+        boolean matches(ProductEntity p) {
+            // the column rounds prices to its scale, so compare values, not representations
+            boolean samePrice = price == null || p.getPrice() == null
+                    ? price == p.getPrice()
+                    : price.compareTo(p.getPrice()) == 0;
+            return samePrice && Objects.equals(type, p.getType())
+                    && Objects.equals(startDate, p.getStartDate()) && Objects.equals(endDate, p.getEndDate());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Periodic online snapshots of a file-backed H2 database ({@code BACKUP TO}), each a zip holding
+ * a transactionally consistent copy of the database file, taken while ingestion keeps running.
+ * Only the newest {@code app.storage.snapshot-keep} are kept. Restoring one is unzipping it into
+ * the storage directory while the application is stopped.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StorageSnapshotService {
+
+    private static final String PREFIX = "insurance-";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // empty disables snapshots, as an in-memory database cannot be backed up this way
+    @Value("${app.storage.snapshot-dir:}")
+    private String snapshotDir;
+
+    @Value("${app.storage.snapshot-keep:3}")
+    private int keep;
+
+    @Scheduled(fixedDelayString = "${app.storage.snapshot-interval-ms:3600000}",
+            initialDelayString = "${app.storage.snapshot-interval-ms:3600000}")
+    public void scheduledSnapshot() {
+        if (snapshotDir.isBlank()) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("Database snapshot failed: {}", e.getMessage(), e);
+        }
+    }
+
+    public Path snapshot() throws IOException {
+        long started = System.nanoTime();
+        Path dir = Paths.get(snapshotDir).toAbsolutePath();
+        Files.createDirectories(dir);
+        Path target = dir.resolve(PREFIX + NAME_FORMAT.format(LocalDateTime.now()) + ".zip");
+        Path part = dir.resolve(target.getFileName() + ".part");
+        jdbcTemplate.execute("BACKUP TO '" + part.toString().replace("'", "''") + "'");
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        prune(dir);
+        log.info("Wrote database snapshot {} ({} bytes) in {} ms", target.getFileName(), Files.size(target),
+                (System.nanoTime() - started) / 1_000_000);
+        return target;
+    }
+
+    private void prune(Path dir) throws IOException {
+        List<Path> snapshots;
+        try (Stream<Path> files = Files.list(dir)) {
+            // the timestamped names sort oldest first
+            snapshots = files.filter(f -> f.getFileName().toString().startsWith(PREFIX)
+                            && f.getFileName().toString().endsWith(".zip"))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < snapshots.size() - Math.max(1, keep); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.service;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.dto.EventDto;
+import org.example.dto.RequestDetailsDto;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a request file element by element instead of binding the whole document into
+ * {@link org.example.entities.XmlRootRequest}. Only {@code <requestDetails>} and one chunk of
+ * {@code <event>} elements are held in memory at a time; each element is still bound to its DTO
+ * by the {@link XmlMapper}, so the mapping rules are the same as for whole-document binding.
+ */
+@Component
+@RequiredArgsConstructor
+public class StreamingRequestReader {
+
+    private final XmlMapper xmlMapper;
+
+    public interface Handler {
+        void onRequestDetails(RequestDetailsDto requestDetails);
+
+        void onEvents(List<EventDto> events);
+    }
+
+    /** Thrown when {@code <events>} appear before {@code <requestDetails>}, which streaming cannot handle. */
+    public static class RequestDetailsNotFirstException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RequestDetailsNotFirstException() {
+            super("<requestDetails> must precede <events> to stream a request file");
+        }
+    }
+
+    /**
+     * Streams the document to the handler: {@code onRequestDetails} first, then {@code onEvents}
+     * with at most {@code chunkSize} events per call.
+     *
+     * @return false if the document has no {@code <requestDetails>} element
+     */
+    public boolean read(InputStream in, int chunkSize, Handler handler) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlMapper.getFactory().getXMLInputFactory().createXMLStreamReader(in);
+            boolean requestDetailsSeen = false;
+            boolean inEvents = false;
+            List<EventDto> chunk = new ArrayList<>(chunkSize);
+            while (reader.hasNext()) {
+                int token = reader.next();
+                if (token == XMLStreamConstants.END_ELEMENT && "events".equals(reader.getLocalName())) {
+                    inEvents = false;
+                }
+                if (token != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("requestDetails".equals(name)) {
+                    handler.onRequestDetails(xmlMapper.readValue(reader, RequestDetailsDto.class));
+                    requestDetailsSeen = true;
+                } else if ("events".equals(name)) {
+                    inEvents = true;
+                } else if (inEvents && "event".equals(name)) {
+                    if (!requestDetailsSeen) {
+                        throw new RequestDetailsNotFirstException();
+                    }
+                    chunk.add(xmlMapper.readValue(reader, EventDto.class));
+                    if (chunk.size() >= chunkSize) {
+                        handler.onEvents(chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                handler.onEvents(chunk);
+            }
+            return requestDetailsSeen;
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed request file: " + e.getMessage(), e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads only as far as {@code <requestDetails>} and returns its {@code sourceCompany}, or null
+     * if the document has none or its events come first.
+     */
+    public String readSourceCompany(InputStream in) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlMapper.getFactory().getXMLInputFactory().createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("requestDetails".equals(name)) {
+                    return xmlMapper.readValue(reader, RequestDetailsDto.class).getSourceCompany();
+                } else if ("events".equals(name)) {
+                    return null;
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed request file: " + e.getMessage(), e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // the underlying stream is closed by the caller
+            }
+        }
+    }
+}
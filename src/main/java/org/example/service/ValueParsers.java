@@ -0,0 +1,211 @@
+package org.example.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Exception-free parsers for the fixed formats of request files. Each returns {@code null} when
+ * the text is not a valid value; surrounding whitespace is ignored. Callers tell a missing value
+ * from an invalid one with {@link #isBlank(String)}.
+ */
+public final class ValueParsers {
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int[] NANOS_SCALE = {
+            100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+    // unscaled values with up to 18 digits fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private ValueParsers() {
+    }
+
+    public static boolean isBlank(String text) {
+        return text == null || text.isBlank();
+    }
+
+    /** {@code yyyy-MM-dd}. */
+    public static LocalDate parseDate(String text) {
+        if (text == null) {
+            return null;
+        }
+        int from = start(text);
+        int to = end(text, from);
+        if (to - from != 10) {
+            return null;
+        }
+        return date(text, from);
+    }
+
+    /**
+     * {@code yyyy-MM-dd HH:mm:ss.SSSSSSSSS}, also accepting a {@code T} separator, no seconds and
+     * 0 to 9 fraction digits, i.e. the ISO-8601 local date-times the old fallback parse allowed.
+     */
+    public static LocalDateTime parseDateTime(String text) {
+        if (text == null) {
+            return null;
+        }
+        int from = start(text);
+        int to = end(text, from);
+        int length = to - from;
+        if (length < 16) {
+            return null;
+        }
+        LocalDate date = date(text, from);
+        char separator = text.charAt(from + 10);
+        if (date == null || (separator != ' ' && separator != 'T')) {
+            return null;
+        }
+        int hour = twoDigits(text, from + 11);
+        int minute = twoDigits(text, from + 14);
+        if (hour < 0 || hour > 23 || text.charAt(from + 13) != ':' || minute < 0 || minute > 59) {
+            return null;
+        }
+        int second = 0;
+        int nano = 0;
+        int i = from + 16;
+        if (i < to) {
+            if (to - i < 3 || text.charAt(i) != ':') {
+                return null;
+            }
+            second = twoDigits(text, i + 1);
+            if (second < 0 || second > 59) {
+                return null;
+            }
+            i += 3;
+            if (i < to) {
+                int digits = to - i - 1;
+                if (text.charAt(i) != '.' || digits > 9) {
+                    return null;
+                }
+                for (int d = 0; d < digits; d++) {
+                    int digit = digit(text.charAt(i + 1 + d));
+                    if (digit < 0) {
+                        return null;
+                    }
+                    nano += digit * NANOS_SCALE[d];
+                }
+            }
+        }
+        return LocalDateTime.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth(), hour, minute, second, nano);
+    }
+
+    /**
+     * Plain decimals as accepted by {@link BigDecimal#BigDecimal(String)}: an optional sign,
+     * digits with an optional fraction, and an optional exponent. The scale is kept, so
+     * {@code 10.50} has scale 2.
+     */
+    public static BigDecimal parseDecimal(String text) {
+        if (text == null) {
+            return null;
+        }
+        int from = start(text);
+        int to = end(text, from);
+        int i = from;
+        boolean negative = false;
+        if (i < to && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            int digit = digit(c);
+            if (digit < 0) {
+                break;
+            }
+            if (digits < MAX_LONG_DIGITS) {
+                unscaled = unscaled * 10 + digit;
+            }
+            digits++;
+            if (fraction) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (i == to && digits <= MAX_LONG_DIGITS) {
+            return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+        }
+        if (i < to && !isExponent(text, i, to)) {
+            return null;
+        }
+        // long mantissas and exponents are rare; the text is known to be valid by now
+        return new BigDecimal(text.substring(from, to));
+    }
+
+    private static boolean isExponent(String text, int i, int to) {
+        char c = text.charAt(i);
+        if (c != 'e' && c != 'E') {
+            return false;
+        }
+        i++;
+        if (i < to && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        // at most 9 digits keeps the resulting scale within an int
+        int digits = to - i;
+        if (digits < 1 || digits > 9) {
+            return false;
+        }
+        for (; i < to; i++) {
+            if (digit(text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static LocalDate date(String text, int from) {
+        int year = twoDigits(text, from);
+        int yearLow = twoDigits(text, from + 2);
+        int month = twoDigits(text, from + 5);
+        int day = twoDigits(text, from + 8);
+        if (year < 0 || yearLow < 0 || month < 1 || month > 12 || day < 1
+                || text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-') {
+            return null;
+        }
+        year = year * 100 + yearLow;
+        int maxDay = month == 2 && isLeap(year) ? 29 : DAYS_IN_MONTH[month - 1];
+        return day > maxDay ? null : LocalDate.of(year, month, day);
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /** The two digits at {@code i} as a number, or -1. */
+    private static int twoDigits(String text, int i) {
+        int high = digit(text.charAt(i));
+        int low = digit(text.charAt(i + 1));
+        return high < 0 || low < 0 ? -1 : high * 10 + low;
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+
+    private static int start(String text) {
+        int i = 0;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int end(String text, int from) {
+        int i = text.length();
+        while (i > from && Character.isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,134 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.entities.BackfillFileEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.repository.*;
+import org.example.service.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class BackfillRunnerTest {
+
+    @TempDir
+    Path backupDir;
+
+    private RequestDetailsWriter writer;
+    private ProcessedFileRepository processedFileRepository;
+    private ProcessedFileLedger ledger;
+    private BackfillFileRepository replayedRepository;
+    private PlatformTransactionManager transactionManager;
+    private BackfillRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        IngestionMetrics metrics = new IngestionMetrics(new SimpleMeterRegistry());
+        ProductsService productsService = new ProductsService(mock(EventRepository.class), mock(InsuredProductsCache.class),
+                mock(InsuredProductsProjectionService.class), new ObjectMapper(), mock(ProductPageRepository.class),
+                metrics, new ProductIdGenerator());
+        writer = mock(RequestDetailsWriter.class);
+        processedFileRepository = mock(ProcessedFileRepository.class);
+        ledger = new ProcessedFileLedger(processedFileRepository);
+        ReflectionTestUtils.setField(ledger, "enabled", true);
+        replayedRepository = mock(BackfillFileRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        runner = new BackfillRunner(new RequestDetailsService(productsService, metrics), writer, mock(FileProcessorService.class),
+                ledger, mock(BackfillCheckpointRepository.class), replayedRepository, mock(InsuredProductsProjectionService.class),
+                mock(InsuredProductsProjectionRebuilder.class), mock(InsuredProductsCache.class), transactionManager,
+                mock(ApplicationContext.class));
+        ReflectionTestUtils.setField(runner, "enabled", true);
+        ReflectionTestUtils.setField(runner, "backupDir", backupDir.toString());
+        ReflectionTestUtils.setField(runner, "threads", 1);
+        ReflectionTestUtils.setField(runner, "filesPerCommit", 10);
+    }
+
+    @Test
+    void resume_SkipsReplayedFilesButNotOnesArchivedLaterWithOlderTimes() throws Exception {
+        Path first = file("first.xml", "R1", 2_000);
+        Path second = file("second.xml", "R2", 3_000);
+        file("late.xml", "R3", 1_000);
+        when(replayedRepository.findBySourceDir(backupDir.toString())).thenReturn(List.of(replayed(first), replayed(second)));
+
+        assertTrue(runner.backfill());
+
+        verify(writer, times(1)).save(any());
+        verify(writer).save(request("R3"));
+        verify(replayedRepository).save(argThat(f -> f.getName().equals("late.xml")));
+    }
+
+    @Test
+    void failedBatch_IsRetriedFileByFile() throws Exception {
+        file("good.xml", "R1", 1_000);
+        file("bad.xml", "R2", 2_000);
+        when(writer.save(request("R2"))).thenThrow(new IllegalStateException("constraint violation"));
+
+        assertFalse(runner.backfill());
+
+        // once in the rolled back batch, once on its own
+        verify(writer, times(2)).save(request("R1"));
+        verify(writer, times(2)).save(request("R2"));
+        verify(transactionManager, times(2)).rollback(any());
+        verify(replayedRepository, never()).save(argThat(f -> f.getName().equals("bad.xml")));
+    }
+
+    @Test
+    void duplicateContent_IsSkippedAndNotReplayedAgain() throws Exception {
+        Path duplicate = file("duplicate.xml", "R1", 1_000);
+        when(processedFileRepository.existsByContentHash(ledger.hash(duplicate))).thenReturn(true);
+
+        assertTrue(runner.backfill());
+
+        verify(writer, never()).save(any());
+        verify(replayedRepository).save(argThat(f -> f.getName().equals("duplicate.xml")));
+    }
+
+    @Test
+    void clusteredBackfillWithoutExit_IsRefused() throws Exception {
+        file("first.xml", "R1", 1_000);
+        ReflectionTestUtils.setField(runner, "clustered", true);
+
+        runner.afterSingletonsInstantiated();
+
+        verify(writer, never()).save(any());
+        verify(replayedRepository, never()).findBySourceDir(anyString());
+    }
+
+    private Path file(String name, String requestId, long lastModified) throws IOException {
+        Path path = Files.writeString(backupDir.resolve(name), "<root><requestDetails><id>" + requestId
+                + "</id><sourceCompany>CompanyA</sourceCompany></requestDetails><events><event><id>E-" + requestId
+                + "</id><type>letter</type><insuredId>I1</insuredId></event></events></root>");
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+        return path;
+    }
+
+    private BackfillFileEntity replayed(Path path) throws IOException {
+        BackfillFileEntity file = new BackfillFileEntity();
+        file.setSourceDir(backupDir.toString());
+        file.setName(path.getFileName().toString());
+        file.setSize(Files.size(path));
+        file.setLastModified(Files.getLastModifiedTime(path).toMillis());
+        return file;
+    }
+
+    private static RequestDetailsEntity request(String requestId) {
+        return argThat(r -> r != null && requestId.equals(r.getId()));
+    }
+}
@@ -0,0 +1,126 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.service.BackupService;
+import org.example.service.IngestionMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackupServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private BackupService backupService;
+    private Path input;
+    private Path backup;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        backupService = new BackupService(new IngestionMetrics(new SimpleMeterRegistry()));
+        input = Files.createDirectories(dir.resolve("input"));
+        backup = dir.resolve("backup");
+        ReflectionTestUtils.setField(backupService, "backupDir", backup.toString());
+        ReflectionTestUtils.setField(backupService, "threads", 1);
+        ReflectionTestUtils.setField(backupService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(backupService, "partition", "yyyy-MM-dd");
+        ReflectionTestUtils.setField(backupService, "compression", "none");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void movesIntoDatePartitionAfterCommit() throws IOException {
+        Path file = write("a.xml", "<root/>");
+        TransactionSynchronizationManager.initSynchronization();
+
+        backupService.tryMoveToBackup(file);
+        assertTrue(Files.exists(file), "moved before commit");
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        backupService.shutdown();
+
+        assertFalse(Files.exists(file));
+        assertFalse(backupService.isPending(file));
+        assertTrue(Files.exists(backup.resolve(LocalDate.now().toString()).resolve("a.xml")));
+    }
+
+    @Test
+    void leavesFileInPlaceAfterRollback() throws IOException {
+        Path file = write("a.xml", "<root/>");
+        TransactionSynchronizationManager.initSynchronization();
+
+        backupService.tryMoveToBackup(file);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        backupService.shutdown();
+
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(backup));
+    }
+
+    @Test
+    void archivesFileOnceItHasBeenRolledBackTooOften() throws IOException {
+        ReflectionTestUtils.setField(backupService, "maxRollbacks", 2);
+        Path file = write("a.xml", "<root/>");
+
+        TransactionSynchronizationManager.initSynchronization();
+        backupService.tryMoveToBackup(file);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertTrue(Files.exists(file), "archived after the first rollback");
+
+        TransactionSynchronizationManager.initSynchronization();
+        backupService.tryMoveToBackup(file);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        backupService.shutdown();
+
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(backup.resolve(LocalDate.now().toString()).resolve("a.xml")));
+    }
+
+    @Test
+    void gzipKeepsContentAndModificationTime() throws IOException {
+        ReflectionTestUtils.setField(backupService, "partition", "");
+        ReflectionTestUtils.setField(backupService, "compression", "gzip");
+        Path file = write("a.xml", "<root><requestDetails/></root>");
+        FileTime modified = FileTime.fromMillis(1_700_000_000_000L);
+        Files.setLastModifiedTime(file, modified);
+
+        backupService.tryMoveToBackup(file);
+        backupService.shutdown();
+
+        Path archived = backup.resolve("a.xml.gz");
+        assertFalse(Files.exists(file));
+        assertEquals(modified, Files.getLastModifiedTime(archived));
+        try (InputStream is = BackupService.open(archived)) {
+            assertEquals("<root><requestDetails/></root>", new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(input.resolve(name), content);
+    }
+
+    private static void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
@@ -0,0 +1,84 @@
+import org.example.service.DirectoryScanner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryScannerTest {
+
+    @TempDir
+    Path input;
+
+    private DirectoryScanner scanner;
+
+    @BeforeEach
+    void setUp() {
+        scanner = new DirectoryScanner(null);
+        ReflectionTestUtils.setField(scanner, "order", "age");
+        ReflectionTestUtils.setField(scanner, "partnerPriority", "");
+        ReflectionTestUtils.setField(scanner, "window", 2);
+        ReflectionTestUtils.setField(scanner, "minAgeMs", 1_000L);
+        ReflectionTestUtils.invokeMethod(scanner, "parse");
+    }
+
+    @Test
+    void takesTheOldestSettledFilesWithinTheWindow() throws IOException {
+        Path correction = file("b.xml", 60_000);
+        Path original = file("a.xml", 120_000);
+        Path later = file("c.xml", 30_000);
+        file("writing.xml", 0);
+
+        DirectoryScanner.Scan scan = scanner.scan(List.of(correction, later, original, input.resolve("writing.xml")), p -> false);
+
+        assertEquals(List.of(original, correction), list(scan.files()));
+        assertTrue(scan.truncated());
+        assertEquals(List.of(later), list(scanner.scan(List.of(later), p -> false).files()));
+    }
+
+    @Test
+    void skipsKnownFilesWithoutReadingThem() throws IOException {
+        Path known = input.resolve("gone.xml");
+        Path file = file("a.xml", 60_000);
+
+        DirectoryScanner.Scan scan = scanner.scan(List.of(known, file), known::equals);
+
+        assertEquals(List.of(file), list(scan.files()));
+        assertFalse(scan.truncated());
+    }
+
+    @Test
+    void fileOverwrittenAfterASweep_WaitsUntilItSettlesAgain() throws IOException {
+        file("a.xml", 120_000);
+        file("b.xml", 90_000);
+        Path overwritten = file("c.xml", 60_000);
+        scanner.scan(List.of(input.resolve("a.xml"), input.resolve("b.xml"), overwritten), p -> false);
+
+        Files.writeString(overwritten, "<root>rewritten</root>");
+
+        DirectoryScanner.Scan scan = scanner.scan(List.of(overwritten), p -> false);
+        assertEquals(List.of(), list(scan.files()));
+        Files.setLastModifiedTime(overwritten, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        assertEquals(List.of(overwritten), list(scanner.scan(List.of(overwritten), p -> false).files()));
+    }
+
+    private Path file(String name, long ageMs) throws IOException {
+        Path file = Files.writeString(input.resolve(name), "<root/>");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - ageMs));
+        return file;
+    }
+
+    private static List<Path> list(Iterable<Path> files) {
+        List<Path> list = new ArrayList<>();
+        files.forEach(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,32 @@
+import org.example.service.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FileBatchProcessorTest {
+
+    @Test
+    void streamedFileInPipelinedMode_IsWrittenWithoutBeingPreparedAgain() {
+        FileProcessorService fileProcessorService = mock(FileProcessorService.class);
+        FileClaims fileClaims = mock(FileClaims.class);
+        IngestPipeline pipeline = mock(IngestPipeline.class);
+        FileBatchProcessor processor = new FileBatchProcessor(fileProcessorService, mock(BackupService.class), fileClaims,
+                pipeline, mock(DirectoryScanner.class), mock(IngestionMetrics.class));
+        Path path = Path.of("large.xml");
+        FileProcessorService.PreparedFile streamed = new FileProcessorService.PreparedFile(path, 1 << 30, "hash", null);
+        when(fileClaims.claim(path)).thenReturn(path);
+        when(pipeline.isEnabled()).thenReturn(true);
+        when(fileProcessorService.prepare(path)).thenReturn(streamed);
+
+        ReflectionTestUtils.invokeMethod(processor, "processClaimedFile", path, (Runnable) () -> { });
+
+        verify(fileProcessorService, times(1)).prepare(path);
+        verify(fileProcessorService).processPrepared(streamed);
+        verify(fileProcessorService, never()).processSingleFile(any());
+        verify(fileClaims).release(path);
+    }
+}
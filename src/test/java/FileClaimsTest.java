@@ -0,0 +1,97 @@
+import org.example.service.BackupService;
+import org.example.service.FileClaims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class FileClaimsTest {
+
+    @TempDir
+    Path input;
+
+    private FileClaims node1;
+    private FileClaims node2;
+
+    @BeforeEach
+    void setUp() {
+        node1 = node("n1");
+        node2 = node("n2");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(node1, "stop");
+        ReflectionTestUtils.invokeMethod(node2, "stop");
+    }
+
+    @Test
+    void onlyOneNodeClaimsAFile() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+
+        Path claimed = node1.claim(file);
+
+        assertEquals(input.resolve(".claims/n1/a.xml"), claimed);
+        assertNull(node2.claim(file));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void unarchivedFileIsReturnedOnRelease() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+        Path claimed = node1.claim(file);
+
+        node1.release(claimed);
+
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(claimed));
+    }
+
+    @Test
+    void filesOfAnExpiredNodeAreReturned() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+        Path claimed = node2.claim(file);
+        FileTime longAgo = FileTime.fromMillis(System.currentTimeMillis() - 120_000);
+        Files.setLastModifiedTime(input.resolve(".claims/n2/.heartbeat"), longAgo);
+
+        ReflectionTestUtils.invokeMethod(node1, "heartbeatAndReclaim");
+
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(claimed));
+        assertFalse(Files.exists(input.resolve(".claims/n2")));
+        assertTrue(Files.exists(input.resolve(".claims/n1/.heartbeat")));
+    }
+
+    @Test
+    void filesOfANodeWithinTheExpiryAreKept() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+        Path claimed = node2.claim(file);
+        FileTime recently = FileTime.fromMillis(System.currentTimeMillis() - 30_000);
+        Files.setLastModifiedTime(input.resolve(".claims/n2/.heartbeat"), recently);
+
+        ReflectionTestUtils.invokeMethod(node1, "heartbeatAndReclaim");
+
+        assertTrue(Files.exists(claimed));
+        assertFalse(Files.exists(file));
+    }
+
+    private FileClaims node(String nodeId) {
+        FileClaims claims = new FileClaims(mock(BackupService.class));
+        ReflectionTestUtils.setField(claims, "enabled", true);
+        ReflectionTestUtils.setField(claims, "inputDir", input.toString());
+        ReflectionTestUtils.setField(claims, "nodeId", nodeId);
+        ReflectionTestUtils.setField(claims, "heartbeatMs", 3_600_000L);
+        ReflectionTestUtils.setField(claims, "claimExpiryMs", 60_000L);
+        ReflectionTestUtils.invokeMethod(claims, "start");
+        return claims;
+    }
+}
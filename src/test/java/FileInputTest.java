@@ -0,0 +1,63 @@
+import org.example.service.FileInput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileInputTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sizeChangedSinceListed_FallsBackToStream() throws IOException {
+        Path file = Files.writeString(dir.resolve("a.xml"), "<root>grown</root>");
+
+        try (InputStream in = FileInput.open(file, 6, 1024, 0)) {
+            assertEquals("<root>grown</root>", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void smallFiles_ReuseTheThreadsBuffer() throws IOException {
+        Path large = Files.writeString(dir.resolve("large.xml"), "<root>large</root>");
+        Path small = Files.writeString(dir.resolve("small.xml"), "<root/>");
+
+        try (InputStream in = FileInput.open(large, Files.size(large), 1024, 0)) {
+            assertEquals("<root>large</root>", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        byte[] buffer = buffer();
+        try (InputStream in = FileInput.open(small, Files.size(small), 1024, 0)) {
+            assertEquals("<root/>", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        assertSame(buffer, buffer());
+    }
+
+    @Test
+    void largeFiles_AreReadFromTheMapping() throws IOException {
+        byte[] content = new byte[64 * 1024];
+        Arrays.fill(content, (byte) 'x');
+        Path file = Files.write(dir.resolve("mapped.xml"), content);
+
+        try (InputStream in = FileInput.open(file, content.length, 1024, 1)) {
+            assertEquals('x', in.read());
+            assertEquals(content.length - 1, in.available());
+            assertEquals(10, in.skip(10));
+            assertArrayEquals(Arrays.copyOf(content, content.length - 11), in.readAllBytes());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] buffer() {
+        return ((ThreadLocal<byte[]>) ReflectionTestUtils.getField(FileInput.class, "BUFFERS")).get();
+    }
+}
@@ -1,6 +1,6 @@
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.example.entities.RequestDetailsEntity;
-import org.example.repository.RequestDetailsRepository;
 import org.example.service.*;
 import org.example.entities.XmlRootRequest;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,22 +8,23 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.*;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class FileProcessorServiceTest {
 
-    @Mock
-    private RequestDetailsRepository requestDetailsRepository;
-
     @Mock
     private RequestDetailsService requestDetailsService;
 
@@ -33,6 +34,22 @@ public class FileProcessorServiceTest {
     @Mock
     private BackupService backupService;
 
+    @Mock
+    private StreamingRequestReader streamingRequestReader;
+
+    @Mock
+    private RequestDetailsWriter requestDetailsWriter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ProcessedFileLedger ledger;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IngestionMetrics metrics;
+
     private FileProcessorService fileProcessorService;
 
     private FileBatchProcessor fileBatchProcessor;
@@ -44,15 +61,20 @@ public class FileProcessorServiceTest {
 
     @BeforeEach
     void setUp() {
-        FileProcessorService realFileProcessorService = new FileProcessorService(requestDetailsRepository, requestDetailsService, backupService);
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new IngestionMetrics(meterRegistry);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        FileProcessorService realFileProcessorService = new FileProcessorService(requestDetailsService, backupService,
+                streamingRequestReader, requestDetailsWriter, eventPublisher, metrics, ledger, transactionManager);
         fileProcessorService = spy(realFileProcessorService);
         ReflectionTestUtils.setField(fileProcessorService, "xmlMapper", xmlMapper);
-        fileBatchProcessor = new FileBatchProcessor(fileProcessorService);
+        fileBatchProcessor = new FileBatchProcessor(fileProcessorService, backupService, new FileClaims(backupService), mock(IngestPipeline.class), new DirectoryScanner(null), metrics);
         Path testInput = Paths.get("test-input").toAbsolutePath();
         ReflectionTestUtils.setField(fileBatchProcessor, "inputDir", testInput.toString());
         Path testBackup = Paths.get("test-backup").toAbsolutePath();
         ReflectionTestUtils.setField(backupService, "backupDir", testBackup.toString());
-        fileScheduledService = new FileScheduledService(fileBatchProcessor);
+        fileScheduledService = new FileScheduledService(fileBatchProcessor, metrics);
         mockPath = mock(Path.class);
         mockFilePath = mock(Path.class);
     }
@@ -182,7 +204,7 @@ public class FileProcessorServiceTest {
 
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
         }
     }
 
@@ -207,7 +229,7 @@ public class FileProcessorServiceTest {
 
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
         }
     }
 
@@ -232,7 +254,7 @@ public class FileProcessorServiceTest {
 
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
         }
     }
 
@@ -267,7 +289,36 @@ public class FileProcessorServiceTest {
 
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository).save(entity);
+            verify(requestDetailsWriter).save(entity);
+            verify(eventPublisher).publishEvent(any(InsuredProductsChangedEvent.class));
+            assertEquals(1.0, meterRegistry.get("ingest.files").tag("outcome", "saved").counter().count());
+            assertEquals(1, meterRegistry.get("ingest.stage").tag("stage", "parse").timer().count());
+        }
+    }
+
+    @Test
+    void testProcessFiles_WithFiles_Duplicate() throws IOException {
+        when(mockFilePath.getFileName()).thenReturn(mockPath);
+        try (MockedStatic<Files> mockedFiles = Mockito.mockStatic(Files.class);
+             MockedStatic<Paths> mockedPaths = Mockito.mockStatic(Paths.class)) {
+            mockedPaths.when(() -> Paths.get(anyString())).thenReturn(mockPath);
+            mockedFiles.when(() -> Files.exists(mockPath)).thenReturn(true);
+            DirectoryStream<Path> mockStream = mock(DirectoryStream.class);
+            when(mockStream.iterator()).thenReturn(List.of(mockFilePath).iterator());
+            mockedFiles.when(() -> Files.newDirectoryStream(mockPath, "*.xml")).thenReturn(mockStream);
+
+            mockedFiles.when(() -> Files.exists(mockFilePath)).thenReturn(true);
+            mockedFiles.when(() -> Files.isRegularFile(mockFilePath)).thenReturn(true);
+            mockedFiles.when(() -> Files.isReadable(mockFilePath)).thenReturn(true);
+            when(ledger.hash(mockFilePath)).thenReturn("hash");
+            when(ledger.isProcessed("hash")).thenReturn(true);
+
+            fileBatchProcessor.processFiles();
+
+            verify(xmlMapper, never()).readValue(any(InputStream.class), eq(XmlRootRequest.class));
+            verify(requestDetailsWriter, never()).save(any());
+            verify(backupService).tryMoveToBackup(mockFilePath);
+            assertEquals(1.0, meterRegistry.get("ingest.files").tag("outcome", "duplicate").counter().count());
         }
     }
 
@@ -290,7 +341,8 @@ public class FileProcessorServiceTest {
 
              fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
+            assertEquals(1.0, meterRegistry.get("ingest.files").tag("outcome", "deferred").counter().count());
         }
     }
 
@@ -313,7 +365,7 @@ public class FileProcessorServiceTest {
 
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
         }
     }
 
@@ -332,7 +384,32 @@ public class FileProcessorServiceTest {
             mockedFiles.when(() -> Files.exists(mockFilePath)).thenReturn(false); // File not exists
             fileBatchProcessor.processFiles();
 
-            verify(requestDetailsRepository, never()).save(any());
+            verify(requestDetailsWriter, never()).save(any());
+        }
+    }
+
+    @Test
+    void testProcessFiles_Parallel() throws IOException {
+        ReflectionTestUtils.setField(fileBatchProcessor, "parallelism", 4);
+        ReflectionTestUtils.setField(fileBatchProcessor, "maxInFlight", 2);
+        List<Path> files = List.of(mock(Path.class), mock(Path.class), mock(Path.class), mock(Path.class), mock(Path.class));
+        doNothing().when(fileProcessorService).processSingleFile(any(Path.class));
+        try (MockedStatic<Files> mockedFiles = Mockito.mockStatic(Files.class);
+             MockedStatic<Paths> mockedPaths = Mockito.mockStatic(Paths.class)) {
+            mockedPaths.when(() -> Paths.get(anyString())).thenReturn(mockPath);
+            mockedFiles.when(() -> Files.exists(mockPath)).thenReturn(true);
+            DirectoryStream<Path> mockStream = mock(DirectoryStream.class);
+            when(mockStream.iterator()).thenReturn(files.iterator());
+            mockedFiles.when(() -> Files.newDirectoryStream(mockPath, "*.xml")).thenReturn(mockStream);
+
+            fileBatchProcessor.processFiles();
+
+            // processFiles returns only after every submitted file has finished
+            for (Path file : files) {
+                verify(fileProcessorService).processSingleFile(file);
+            }
+        } finally {
+            fileBatchProcessor.shutdown();
         }
     }
 }
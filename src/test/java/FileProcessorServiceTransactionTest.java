@@ -0,0 +1,192 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.entities.ProcessedFileEntity;
+import org.example.entities.XmlRootRequest;
+import org.example.repository.EventRepository;
+import org.example.repository.ProcessedFileRepository;
+import org.example.repository.ProductPageRepository;
+import org.example.service.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/** Runs files through {@link FileProcessorService} against H2, checking what a failed file leaves behind. */
+class FileProcessorServiceTransactionTest {
+
+    private static final String REQUEST_ID = "a3a4477e-88fa-49bd-9d30-7ec7dcab8f45";
+
+    @TempDir
+    Path inputDir;
+
+    private JdbcTemplate jdbc;
+    private BackupService backupService;
+    private SimpleMeterRegistry meterRegistry;
+    private ProcessedFileLedger ledger;
+    private FileProcessorService fileProcessorService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:tx-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table request_details (id varchar(255) primary key, accept_date timestamp(6), source_company varchar(255))");
+        jdbc.execute("create table event (id varchar(255) primary key, type varchar(255), insured_id varchar(255), request_id varchar(255))");
+        // short product type, so a long one fails the product batch
+        jdbc.execute("create table product (id uuid primary key, type varchar(10), price numeric(38,2), "
+                + "start_date date, end_date date, event_id varchar(255), insured_id varchar(255))");
+
+        ledger = new ProcessedFileLedger(ledgerRepository());
+        RequestDetailsWriter writer = new RequestDetailsWriter(null, null, null, jdbc, ledger);
+        ReflectionTestUtils.setField(writer, "mode", "jdbc");
+        ReflectionTestUtils.setField(writer, "batchSize", 500);
+        meterRegistry = new SimpleMeterRegistry();
+        IngestionMetrics metrics = new IngestionMetrics(meterRegistry);
+        ProductsService productsService = new ProductsService(mock(EventRepository.class), mock(InsuredProductsCache.class),
+                mock(InsuredProductsProjectionService.class), new ObjectMapper(), mock(ProductPageRepository.class),
+                metrics, new ProductIdGenerator());
+        backupService = mock(BackupService.class);
+        fileProcessorService = new FileProcessorService(new RequestDetailsService(productsService, metrics), backupService,
+                new StreamingRequestReader(new XmlMapper()), writer, mock(ApplicationEventPublisher.class), metrics,
+                ledger, new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void truncatedStreamedFile_LeavesStoredRequestUnchanged() throws IOException {
+        fileProcessorService.processSingleFile(file("first.xml", request("CompanyA", 3, "policy")));
+        List<String> events = eventIds();
+        ReflectionTestUtils.setField(fileProcessorService, "streamingThresholdBytes", 1L);
+        ReflectionTestUtils.setField(fileProcessorService, "streamingChunkSize", 1);
+
+        String resubmitted = request("CompanyB", 50, "policy");
+        Path truncated = file("truncated.xml", resubmitted.substring(0, resubmitted.length() * 2 / 3));
+        fileProcessorService.processSingleFile(truncated);
+
+        assertStoredRequest("CompanyA", events);
+        assertEquals(1.0, meterRegistry.counter("ingest.files", "outcome", "failed").count());
+        verify(backupService).tryMoveToBackup(truncated);
+    }
+
+    @Test
+    void failedProductBatch_LeavesStoredRequestUnchanged() throws IOException {
+        fileProcessorService.processSingleFile(file("first.xml", request("CompanyA", 3, "policy")));
+        List<String> events = eventIds();
+
+        Path failing = file("failing.xml", request("CompanyB", 4, "a-product-type-too-long-for-the-column"));
+        fileProcessorService.processSingleFile(failing);
+
+        assertStoredRequest("CompanyA", events);
+        assertEquals(1.0, meterRegistry.counter("ingest.files", "outcome", "failed").count());
+        verify(backupService).tryMoveToBackup(failing);
+    }
+
+    @Test
+    void failedProductBatch_IsLeftForAnotherRunWhileRollbacksRemain() throws IOException {
+        Path failing = file("failing.xml", request("CompanyB", 4, "a-product-type-too-long-for-the-column"));
+        when(backupService.keepForRetry(failing)).thenReturn(true);
+
+        fileProcessorService.processSingleFile(failing);
+
+        assertEquals(1.0, meterRegistry.counter("ingest.files", "outcome", "deferred").count());
+        verify(backupService, never()).tryMoveToBackup(failing);
+    }
+
+    @Test
+    void faultWhileReadingTruncatedMappedFile_FailsTheFile() throws IOException {
+        XmlMapper xmlMapper = mock(XmlMapper.class);
+        when(xmlMapper.readValue(any(InputStream.class), eq(XmlRootRequest.class)))
+                .thenThrow(new InternalError("a fault occurred in an unsafe memory access operation"));
+        ReflectionTestUtils.setField(fileProcessorService, "xmlMapper", xmlMapper);
+
+        Path truncated = file("truncated.xml", request("CompanyA", 3, "policy"));
+        fileProcessorService.processSingleFile(truncated);
+
+        assertEquals(1.0, meterRegistry.counter("ingest.files", "outcome", "failed").count());
+        verify(backupService).tryMoveToBackup(truncated);
+    }
+
+    @Test
+    void fileWhoseEventWasTakenByAnotherRequest_IsAppliedAgain() throws IOException {
+        ReflectionTestUtils.setField(ledger, "enabled", true);
+        String original = request("R-A", "CompanyA", 0, 3, "policy");
+        fileProcessorService.processSingleFile(file("a.xml", original));
+        fileProcessorService.processSingleFile(file("b.xml", request("R-B", "CompanyB", 2, 2, "policy")));
+        assertEquals("R-B", jdbc.queryForObject("select request_id from event where id = 'E2'", String.class));
+
+        fileProcessorService.processSingleFile(file("a-again.xml", original));
+
+        assertEquals("R-A", jdbc.queryForObject("select request_id from event where id = 'E2'", String.class));
+        assertEquals(0.0, meterRegistry.counter("ingest.files", "outcome", "duplicate").count());
+    }
+
+    private void assertStoredRequest(String sourceCompany, List<String> events) {
+        assertEquals(sourceCompany, jdbc.queryForObject("select source_company from request_details where id = ?", String.class, REQUEST_ID));
+        assertEquals(events, eventIds());
+        assertEquals(events.size(), jdbc.queryForObject("select count(*) from product", Integer.class));
+    }
+
+    private List<String> eventIds() {
+        return jdbc.queryForList("select id from event order by id", String.class);
+    }
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(inputDir.resolve(name), content);
+    }
+
+    /** A ledger over a map, standing in for the processed_file table. */
+    private static ProcessedFileRepository ledgerRepository() {
+        Map<String, ProcessedFileEntity> rows = new HashMap<>();
+        ProcessedFileRepository repository = mock(ProcessedFileRepository.class);
+        when(repository.save(any())).thenAnswer(i -> {
+            ProcessedFileEntity row = i.getArgument(0);
+            rows.put(row.getRequestId(), row);
+            return row;
+        });
+        when(repository.existsByContentHash(anyString())).thenAnswer(i ->
+                rows.values().stream().anyMatch(row -> row.getContentHash().equals(i.getArgument(0))));
+        when(repository.deleteByRequestIdIn(anyCollection())).thenAnswer(i -> {
+            Collection<String> requestIds = i.getArgument(0);
+            requestIds.forEach(rows::remove);
+            return requestIds.size();
+        });
+        return repository;
+    }
+
+    private static String request(String sourceCompany, int events, String productType) {
+        return request(REQUEST_ID, sourceCompany, 0, events, productType);
+    }
+
+    private static String request(String requestId, String sourceCompany, int firstEvent, int events, String productType) {
+        StringBuilder xml = new StringBuilder("<root><requestDetails><id>").append(requestId)
+                .append("</id><acceptDate>2021-05-18 13:07:38.022000000</acceptDate><sourceCompany>")
+                .append(sourceCompany).append("</sourceCompany></requestDetails><events>");
+        for (int i = firstEvent; i < firstEvent + events; i++) {
+            xml.append("<event><id>E").append(i).append("</id><type>letter</type><insuredId>I").append(i)
+                    .append("</insuredId><products><product><type>").append(productType)
+                    .append("</type><price>100</price><startDate>2024-05-30</startDate><endDate>2025-04-30</endDate>")
+                    .append("</product></products></event>");
+        }
+        return xml.append("</events></root>").toString();
+    }
+}
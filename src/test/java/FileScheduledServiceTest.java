@@ -0,0 +1,44 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.service.FileBatchProcessor;
+import org.example.service.FileScheduledService;
+import org.example.service.IngestionMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileScheduledServiceTest {
+
+    @Test
+    void adaptivePollFollowsTheBacklog() {
+        FileBatchProcessor processor = mock(FileBatchProcessor.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FileScheduledService service = new FileScheduledService(processor, new IngestionMetrics(registry));
+        ReflectionTestUtils.setField(service, "adaptive", true);
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(service, "minIntervalMs", 1_000L);
+        ReflectionTestUtils.setField(service, "delayMs", 60_000L);
+        when(processor.processFiles()).thenReturn(
+                new FileBatchProcessor.RunResult(10, false),
+                new FileBatchProcessor.RunResult(500, true),
+                new FileBatchProcessor.RunResult(40, false),
+                new FileBatchProcessor.RunResult(0, false),
+                new FileBatchProcessor.RunResult(0, false));
+
+        long[] delays = new long[5];
+        for (int i = 0; i < delays.length; i++) {
+            service.Schedule();
+            delays[i] = (long) ReflectionTestUtils.getField(service, "delayMs");
+        }
+
+        // growing, budget, draining, idle, idle
+        assertEquals(1_000L, delays[0]);
+        assertEquals(1_000L, delays[1]);
+        assertEquals(1_000L, delays[2]);
+        assertEquals(2_000L, delays[3]);
+        assertEquals(4_000L, delays[4]);
+        assertEquals(2.0, registry.get("ingest.poll.decisions").tag("decision", "idle").counter().count());
+    }
+}
@@ -0,0 +1,99 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.entities.RequestDetailsEntity;
+import org.example.service.FileProcessorService;
+import org.example.service.IngestPipeline;
+import org.example.service.IngestionMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IngestPipelineTest {
+
+    private FileProcessorService fileProcessorService;
+    private PlatformTransactionManager transactionManager;
+    private IngestPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        fileProcessorService = mock(FileProcessorService.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        pipeline = new IngestPipeline(fileProcessorService, mock(ApplicationEventPublisher.class),
+                transactionManager, new IngestionMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(pipeline, "enabled", true);
+        ReflectionTestUtils.setField(pipeline, "persistThreads", 1);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "filesPerCommit", 10);
+        ReflectionTestUtils.setField(pipeline, "maxRowsPerCommit", 0L);
+        ReflectionTestUtils.setField(pipeline, "lingerMs", 0L);
+    }
+
+    @Test
+    void badFileDoesNotFailTheOthers() throws InterruptedException {
+        FileProcessorService.PreparedFile good = prepared("good.xml");
+        FileProcessorService.PreparedFile bad = prepared("bad.xml");
+        RuntimeException error = new IllegalStateException("constraint violation");
+        when(fileProcessorService.write(good)).thenReturn(Set.of("1"));
+        when(fileProcessorService.write(bad)).thenThrow(error);
+        AtomicInteger done = new AtomicInteger();
+
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+        pipeline.persist(good, done::incrementAndGet);
+        pipeline.persist(bad, done::incrementAndGet);
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+
+        verify(fileProcessorService).finish(good);
+        verify(fileProcessorService, never()).finish(bad);
+        verify(fileProcessorService).rolledBack(eq(bad.path()), eq(error));
+        verify(fileProcessorService, never()).rolledBack(eq(good.path()), any());
+        assertEquals(2, done.get());
+    }
+
+    @Test
+    void smallFilesShareOneTransaction() throws InterruptedException {
+        ReflectionTestUtils.setField(pipeline, "lingerMs", 5_000L);
+        ReflectionTestUtils.setField(pipeline, "filesPerCommit", 3);
+
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+        for (String name : List.of("a.xml", "b.xml", "c.xml")) {
+            pipeline.persist(prepared(name), () -> {
+            });
+        }
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(fileProcessorService, times(3)).finish(any());
+    }
+
+    @Test
+    void rowLimitClosesTheTransaction() throws InterruptedException {
+        ReflectionTestUtils.setField(pipeline, "lingerMs", 5_000L);
+        ReflectionTestUtils.setField(pipeline, "maxRowsPerCommit", 1L);
+
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+        for (String name : List.of("a.xml", "b.xml", "c.xml")) {
+            pipeline.persist(prepared(name), () -> {
+            });
+        }
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+
+        verify(transactionManager, times(3)).getTransaction(any());
+    }
+
+    private static FileProcessorService.PreparedFile prepared(String name) {
+        return new FileProcessorService.PreparedFile(Path.of(name), 1, "hash-" + name, new RequestDetailsEntity());
+    }
+}
@@ -0,0 +1,104 @@
+import org.example.service.FileBatchProcessor;
+import org.example.service.InputDirectoryWatcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class InputDirectoryWatcherTest {
+
+    @TempDir
+    Path input;
+
+    private FileBatchProcessor fileBatchProcessor;
+    private InputDirectoryWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        fileBatchProcessor = mock(FileBatchProcessor.class);
+        watcher = new InputDirectoryWatcher(fileBatchProcessor);
+        ReflectionTestUtils.setField(watcher, "inputDir", input.toString());
+        ReflectionTestUtils.setField(watcher, "settleMs", 0L);
+    }
+
+    @Test
+    void fileIsDispatchedOnlyOnceItStopsChanging() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root>");
+        ReflectionTestUtils.invokeMethod(watcher, "track", file);
+
+        dispatchSettledFiles();
+        verify(fileBatchProcessor, never()).dispatch(any());
+
+        Files.writeString(file, "<requestDetails/>", StandardOpenOption.APPEND);
+        dispatchSettledFiles();
+        verify(fileBatchProcessor, never()).dispatch(any());
+
+        dispatchSettledFiles();
+        verify(fileBatchProcessor).dispatch(file);
+        dispatchSettledFiles();
+        verify(fileBatchProcessor).dispatch(file);
+    }
+
+    @Test
+    void fileIsNotDispatchedBeforeTheSettlePeriod() throws IOException {
+        ReflectionTestUtils.setField(watcher, "settleMs", 60_000L);
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+        ReflectionTestUtils.invokeMethod(watcher, "track", file);
+
+        dispatchSettledFiles();
+        dispatchSettledFiles();
+
+        verify(fileBatchProcessor, never()).dispatch(any());
+    }
+
+    @Test
+    void vanishedFileIsDropped() throws IOException {
+        Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+        ReflectionTestUtils.invokeMethod(watcher, "track", file);
+        Files.delete(file);
+
+        dispatchSettledFiles();
+
+        verify(fileBatchProcessor, never()).dispatch(any());
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(watcher, "pending")).isEmpty());
+    }
+
+    @Test
+    void overflowTriggersOneSweep() {
+        ((AtomicBoolean) ReflectionTestUtils.getField(watcher, "sweepRequested")).set(true);
+
+        dispatchSettledFiles();
+        dispatchSettledFiles();
+
+        verify(fileBatchProcessor, times(1)).processFiles();
+    }
+
+    @Test
+    void watchedFileIsDispatched() throws IOException {
+        ReflectionTestUtils.setField(watcher, "enabled", true);
+        ReflectionTestUtils.setField(watcher, "settleMs", 50L);
+        watcher.start();
+        try {
+            Path file = Files.writeString(input.resolve("a.xml"), "<root/>");
+
+            verify(fileBatchProcessor, timeout(10_000)).dispatch(file);
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    private void dispatchSettledFiles() {
+        ReflectionTestUtils.invokeMethod(watcher, "dispatchSettledFiles");
+    }
+}
@@ -0,0 +1,150 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.service.IngestionMetrics;
+import org.example.service.InsuredProductsCache;
+import org.example.service.InsuredProductsChangedEvent;
+import org.example.service.InsuredProductsPayload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InsuredProductsCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private InsuredProductsCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new InsuredProductsCache(new IngestionMetrics(registry));
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        loads = new AtomicInteger();
+    }
+
+    private InsuredProductsPayload load(String insuredId) {
+        loads.incrementAndGet();
+        byte[] json = ("{\"insuredId\":\"" + insuredId + "\",\"groups\":[]}").getBytes(StandardCharsets.UTF_8);
+        return InsuredProductsPayload.of(json, InsuredProductsPayload.etagOf(json), 0);
+    }
+
+    @Test
+    void testGet_HitAfterMiss() {
+        InsuredProductsPayload first = cache.get("1", this::load);
+        InsuredProductsPayload second = cache.get("1", this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    void testGet_EvictsLeastRecentlyUsed() {
+        cache.get("1", this::load);
+        cache.get("2", this::load);
+        cache.get("1", this::load); // 1 is now more recent than 2
+        cache.get("3", this::load);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        cache.get("1", this::load);
+        assertEquals(3, loads.get());
+        cache.get("2", this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void testGet_ExpiredEntryIsReloaded() throws InterruptedException {
+        ReflectionTestUtils.setField(cache, "ttlMs", 1L);
+        cache.get("1", this::load);
+        Thread.sleep(5);
+        cache.get("1", this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGet_CachesMissingInsured() {
+        assertNull(cache.get("1", id -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get("1", this::load));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testInvalidate_OnlyTouchedInsureds() {
+        cache.get("1", this::load);
+        cache.get("2", this::load);
+
+        cache.onInsuredProductsChanged(new InsuredProductsChangedEvent(Set.of("1")));
+
+        cache.get("1", this::load);
+        cache.get("2", this::load);
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.invalidationCount());
+    }
+
+    @Test
+    void testInvalidate_DuringLoadDoesNotCacheStaleValue() {
+        cache.get("1", id -> {
+            // a commit lands while this reader is still loading
+            cache.invalidate(Set.of("1"));
+            return load(id);
+        });
+        cache.get("1", this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testPreload_SkipsCachedAndInvalidatedInsureds() {
+        cache.get("1", this::load);
+
+        cache.preload(List.of("1", "2", "unknown"), ids -> {
+            assertEquals(List.of("2", "unknown"), ids);
+            // an ingestion commits while the bulk read runs
+            cache.invalidate(Set.of("2"));
+            return Map.of("2", load("2"));
+        });
+
+        assertEquals(1, cache.size());
+        assertEquals(List.of("1"), cache.hottest(10));
+    }
+
+    @Test
+    void testMeters_PublishCacheCounts() {
+        ReflectionTestUtils.invokeMethod(cache, "registerMeters");
+        cache.get("1", this::load);
+        cache.get("1", this::load);
+        cache.get("2", this::load);
+        cache.get("3", this::load);
+        cache.onInsuredProductsChanged(new InsuredProductsChangedEvent(Set.of("3")));
+
+        assertEquals(1.0, registry.get("products.cache.hits").functionCounter().count());
+        assertEquals(3.0, registry.get("products.cache.misses").functionCounter().count());
+        assertEquals(1.0, registry.get("products.cache.evictions").functionCounter().count());
+        assertEquals(1.0, registry.get("products.cache.invalidations").functionCounter().count());
+        assertEquals(1.0, registry.get("products.cache.size").gauge().value());
+    }
+
+    @Test
+    void testHottest_MostRecentlyUsedFirst() {
+        cache.get("1", this::load);
+        cache.get("2", this::load);
+        cache.get("1", this::load);
+
+        assertEquals(List.of("1", "2"), cache.hottest(10));
+        assertEquals(List.of("1"), cache.hottest(1));
+    }
+}
@@ -0,0 +1,83 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.example.repository.EventRepository;
+import org.example.repository.InsuredProductsProjectionRepository;
+import org.example.service.InsuredProductsChangedEvent;
+import org.example.service.InsuredProductsProjectionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class InsuredProductsProjectionServiceTest {
+
+    private EventRepository eventRepository;
+    private InsuredProductsProjectionService projectionService;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(EventRepository.class);
+        when(eventRepository.findProductRowsByInsuredIdIn(anyCollection())).thenReturn(List.of());
+        projectionService = new InsuredProductsProjectionService(eventRepository, mock(InsuredProductsProjectionRepository.class),
+                mock(EntityManager.class), new ObjectMapper());
+        ReflectionTestUtils.setField(projectionService, "enabled", true);
+    }
+
+    @Test
+    void sameInsured_SecondRefreshWaitsForTheFirstTransactionToComplete() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch firstRefreshed = new CountDownLatch(1);
+            CountDownLatch completeFirst = new CountDownLatch(1);
+            Future<?> first = executor.submit(() -> inTransaction(() -> {
+                projectionService.onInsuredProductsChanged(new InsuredProductsChangedEvent(Set.of("I1", "I2")));
+                firstRefreshed.countDown();
+                await(completeFirst);
+            }));
+            assertTrue(firstRefreshed.await(5, TimeUnit.SECONDS));
+
+            Future<?> second = executor.submit(() -> inTransaction(() ->
+                    projectionService.onInsuredProductsChanged(new InsuredProductsChangedEvent(Set.of("I1")))));
+            assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+            verify(eventRepository, times(1)).findProductRowsByInsuredIdIn(anyCollection());
+
+            completeFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            verify(eventRepository, times(2)).findProductRowsByInsuredIdIn(anyCollection());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Runs {@code body} with transaction synchronization active, then completes it as committed. */
+    private static Void inTransaction(Runnable body) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            body.run();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        return null;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
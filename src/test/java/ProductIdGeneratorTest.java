@@ -0,0 +1,45 @@
+import org.example.service.ProductIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductIdGeneratorTest {
+
+    @Test
+    void v7_IsTimeOrderedRfc9562() {
+        ProductIdGenerator generator = new ProductIdGenerator();
+        ReflectionTestUtils.setField(generator, "strategy", "v7");
+        long before = System.currentTimeMillis();
+
+        UUID first = generator.next();
+        UUID second = generator.next();
+
+        assertEquals(7, first.version());
+        assertEquals(2, first.variant());
+        long millis = first.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= before && millis <= System.currentTimeMillis());
+        assertTrue(second.getMostSignificantBits() >>> 16 >= millis);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void random_KeepsVersion4() {
+        ProductIdGenerator generator = new ProductIdGenerator();
+        ReflectionTestUtils.setField(generator, "strategy", "random");
+
+        assertEquals(4, generator.next().version());
+    }
+
+    @Test
+    void parse_OnlyCanonicalUuids() {
+        UUID id = UUID.randomUUID();
+        assertEquals(id, ProductIdGenerator.parse(id.toString()));
+        assertNull(ProductIdGenerator.parse(null));
+        assertNull(ProductIdGenerator.parse("prod2"));
+        assertNull(ProductIdGenerator.parse("1-1-1-1-1"));
+        assertNull(ProductIdGenerator.parse(id.toString().replace('-', 'x')));
+    }
+}
@@ -1,109 +1,125 @@
 
-import org.example.controller.ProductsController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.domain.InsuredProductRow;
+import org.example.domain.InsuredProductsPage;
 import org.example.domain.InsuredProductsResponse;
-import org.example.entities.EventEntity;
-import org.example.entities.ProductEntity;
-import org.example.entities.RequestDetailsEntity;
+import org.example.domain.ProductFilter;
 import org.example.repository.EventRepository;
+import org.example.repository.ProductPageRepository;
+import org.example.service.IngestionMetrics;
+import org.example.service.InsuredProductsCache;
+import org.example.service.InsuredProductsProjectionService;
 import org.example.service.ProductsService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class ProductsControllerTest {
 
+    private static final String PROD1 = "018f3c1e-7a00-7000-8000-000000000001";
+    private static final String PROD2 = "018f3c1e-7a00-7000-8000-000000000002";
+    private static final String PROD3 = "018f3c1e-7a00-7000-8000-000000000003";
+
     @Mock
     private EventRepository eventRepository;
 
+    @Mock
+    private ProductPageRepository productPageRepository;
+
+    // disabled, so products are read from the events
+    @Mock
+    private InsuredProductsProjectionService projectionService;
+
+    // max-entries is 0 outside Spring, so the cache loads straight through
+    @Spy
+    private InsuredProductsCache insuredProductsCache = new InsuredProductsCache(new IngestionMetrics(new SimpleMeterRegistry()));
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
     @InjectMocks
     private ProductsService productsService;
 
+    private InsuredProductsResponse body(ResponseEntity<byte[]> response) throws IOException {
+        return objectMapper.readValue(response.getBody(), InsuredProductsResponse.class);
+    }
+
     @Test
     void testGetProductsByInsured_NoEventsFound() {
         // Arrange
         String insuredId = "123";
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(Collections.emptyList());
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(Collections.emptyList());
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(404, response.getStatusCodeValue());
     }
 
     @Test
-    void testGetProductsByInsured_EventsWithProducts() {
+    void testGetProductsByInsured_EventsWithProducts() throws IOException {
         // Arrange
         String insuredId = "123";
-        EventEntity event = new EventEntity();
-        event.setId("event1");
-        event.setInsuredId(insuredId);
-
-        RequestDetailsEntity requestDetails = new RequestDetailsEntity();
-        requestDetails.setSourceCompany("CompanyA");
-        event.setRequestDetails(requestDetails);
+        InsuredProductRow row = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
 
-        ProductEntity product = new ProductEntity();
-        product.setId("prod1");
-        product.setType("type1");
-        product.setPrice(BigDecimal.valueOf(100.0));
-        product.setStartDate(LocalDate.now());
-        product.setEndDate(LocalDate.now().plusDays(30));
-        event.setProducts(List.of(product));
-
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(List.of(event));
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row));
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(200, response.getStatusCodeValue());
-        InsuredProductsResponse body = (InsuredProductsResponse) response.getBody();
+        InsuredProductsResponse body = body(response);
         assertNotNull(body);
         assertEquals(insuredId, body.insuredId);
         assertEquals(1, body.groups.size());
         assertEquals("CompanyA", body.groups.get(0).sourceCompany);
         assertEquals(1, body.groups.get(0).products.size());
         assertEquals("prod1", body.groups.get(0).products.get(0).id);
+        assertEquals("event1", body.groups.get(0).products.get(0).eventId);
     }
 
     @Test
-    void testGetProductsByInsured_EventsWithNullRequestDetails() {
+    void testGetProductsByInsured_EventsWithNullRequestDetails() throws IOException {
         // Arrange
         String insuredId = "123";
-        EventEntity event = new EventEntity();
-        event.setId("event1");
-        event.setInsuredId(insuredId);
-        event.setRequestDetails(null); // null requestDetails
-
-        ProductEntity product = new ProductEntity();
-        product.setId("prod1");
-        product.setType("type1");
-        product.setPrice(BigDecimal.valueOf(100.0));
-        product.setStartDate(LocalDate.now());
-        product.setEndDate(LocalDate.now().plusDays(30));
-        event.setProducts(List.of(product));
+        InsuredProductRow row = new InsuredProductRow(insuredId, null, "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1"); // null requestDetails
 
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(List.of(event));
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row));
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(200, response.getStatusCodeValue());
-        InsuredProductsResponse body = (InsuredProductsResponse) response.getBody();
+        InsuredProductsResponse body = body(response);
         assertNotNull(body);
         assertEquals(insuredId, body.insuredId);
         assertEquals(1, body.groups.size());
@@ -112,26 +128,19 @@ public class ProductsControllerTest {
     }
 
     @Test
-    void testGetProductsByInsured_EventsWithNullProducts() {
+    void testGetProductsByInsured_EventsWithNullProducts() throws IOException {
         // Arrange
         String insuredId = "123";
-        EventEntity event = new EventEntity();
-        event.setId("event1");
-        event.setInsuredId(insuredId);
-
-        RequestDetailsEntity requestDetails = new RequestDetailsEntity();
-        requestDetails.setSourceCompany("CompanyA");
-        event.setRequestDetails(requestDetails);
-        event.setProducts(null); // null products
+        InsuredProductRow row = new InsuredProductRow(insuredId, "CompanyA", null, null, null, null, null, "event1"); // no products
 
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(List.of(event));
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row));
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(200, response.getStatusCodeValue());
-        InsuredProductsResponse body = (InsuredProductsResponse) response.getBody();
+        InsuredProductsResponse body = body(response);
         assertNotNull(body);
         assertEquals(insuredId, body.insuredId);
         assertEquals(1, body.groups.size());
@@ -140,46 +149,22 @@ public class ProductsControllerTest {
     }
 
     @Test
-    void testGetProductsByInsured_MultipleEventsMultipleCompanies() {
+    void testGetProductsByInsured_MultipleEventsMultipleCompanies() throws IOException {
         // Arrange
         String insuredId = "123";
+        InsuredProductRow row1 = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        InsuredProductRow row2 = new InsuredProductRow(insuredId, "CompanyB", "prod2", "type2", BigDecimal.valueOf(200.0),
+                LocalDate.now(), LocalDate.now().plusDays(60), "event2");
 
-        EventEntity event1 = new EventEntity();
-        event1.setId("event1");
-        event1.setInsuredId(insuredId);
-        RequestDetailsEntity rd1 = new RequestDetailsEntity();
-        rd1.setSourceCompany("CompanyA");
-        event1.setRequestDetails(rd1);
-        ProductEntity p1 = new ProductEntity();
-        p1.setId("prod1");
-        p1.setType("type1");
-        p1.setPrice(BigDecimal.valueOf(100.0));
-        p1.setStartDate(LocalDate.now());
-        p1.setEndDate(LocalDate.now().plusDays(30));
-        event1.setProducts(List.of(p1));
-
-        EventEntity event2 = new EventEntity();
-        event2.setId("event2");
-        event2.setInsuredId(insuredId);
-        RequestDetailsEntity rd2 = new RequestDetailsEntity();
-        rd2.setSourceCompany("CompanyB");
-        event2.setRequestDetails(rd2);
-        ProductEntity p2 = new ProductEntity();
-        p2.setId("prod2");
-        p2.setType("type2");
-        p2.setPrice(BigDecimal.valueOf(200.0));
-        p2.setStartDate(LocalDate.now());
-        p2.setEndDate(LocalDate.now().plusDays(60));
-        event2.setProducts(List.of(p2));
-
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(List.of(event1, event2));
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row1, row2));
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(200, response.getStatusCodeValue());
-        InsuredProductsResponse body = (InsuredProductsResponse) response.getBody();
+        InsuredProductsResponse body = body(response);
         assertNotNull(body);
         assertEquals(insuredId, body.insuredId);
         assertEquals(2, body.groups.size());
@@ -191,41 +176,22 @@ public class ProductsControllerTest {
     }
 
     @Test
-    void testGetProductsByInsured_EventWithMultipleProducts() {
+    void testGetProductsByInsured_EventWithMultipleProducts() throws IOException {
         // Arrange
         String insuredId = "123";
-        EventEntity event = new EventEntity();
-        event.setId("event1");
-        event.setInsuredId(insuredId);
-
-        RequestDetailsEntity requestDetails = new RequestDetailsEntity();
-        requestDetails.setSourceCompany("CompanyA");
-        event.setRequestDetails(requestDetails);
-
-        ProductEntity product1 = new ProductEntity();
-        product1.setId("prod1");
-        product1.setType("type1");
-        product1.setPrice(BigDecimal.valueOf(100.0));
-        product1.setStartDate(LocalDate.now());
-        product1.setEndDate(LocalDate.now().plusDays(30));
+        InsuredProductRow row1 = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        InsuredProductRow row2 = new InsuredProductRow(insuredId, "CompanyA", "prod2", "type2", BigDecimal.valueOf(150.0),
+                LocalDate.now(), LocalDate.now().plusDays(45), "event1");
 
-        ProductEntity product2 = new ProductEntity();
-        product2.setId("prod2");
-        product2.setType("type2");
-        product2.setPrice(BigDecimal.valueOf(150.0));
-        product2.setStartDate(LocalDate.now());
-        product2.setEndDate(LocalDate.now().plusDays(45));
-
-        event.setProducts(List.of(product1, product2));
-
-        when(eventRepository.findByInsuredId(insuredId)).thenReturn(List.of(event));
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row1, row2));
 
         // Act
-        ResponseEntity<?> response = productsService.getProductsByInsured(insuredId);
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, null, false);
 
         // Assert
         assertEquals(200, response.getStatusCodeValue());
-        InsuredProductsResponse body = (InsuredProductsResponse) response.getBody();
+        InsuredProductsResponse body = body(response);
         assertNotNull(body);
         assertEquals(insuredId, body.insuredId);
         assertEquals(1, body.groups.size());
@@ -234,4 +200,138 @@ public class ProductsControllerTest {
         assertTrue(body.groups.get(0).products.stream().anyMatch(p -> "prod1".equals(p.id)));
         assertTrue(body.groups.get(0).products.stream().anyMatch(p -> "prod2".equals(p.id)));
     }
+
+    @Test
+    void testGetProductsByInsured_MatchingEtagReturnsNotModified() {
+        // Arrange
+        String insuredId = "123";
+        InsuredProductRow row = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row));
+        String etag = productsService.getProductsByInsured(insuredId, null, false).getHeaders().getETag();
+
+        // Act
+        ResponseEntity<byte[]> response = productsService.getProductsByInsured(insuredId, "\"other\", " + etag, false);
+
+        // Assert
+        assertNotNull(etag);
+        assertEquals(304, response.getStatusCodeValue());
+        assertEquals(etag, response.getHeaders().getETag());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testGetProductsByInsured_GzipWhenAccepted() throws IOException {
+        // Arrange
+        String insuredId = "123";
+        ReflectionTestUtils.setField(productsService, "gzipMinBytes", 1);
+        InsuredProductRow row = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row, row, row, row));
+
+        // Act
+        ResponseEntity<byte[]> plain = productsService.getProductsByInsured(insuredId, null, false);
+        ResponseEntity<byte[]> gzipped = productsService.getProductsByInsured(insuredId, null, true);
+
+        // Assert
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        String plainEtag = plain.getHeaders().getETag();
+        assertEquals(plainEtag.substring(0, plainEtag.length() - 1) + "-gzip\"", gzipped.getHeaders().getETag());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBody()))) {
+            assertArrayEquals(plain.getBody(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testGetProductsByInsured_EitherEtagReturnsNotModified() {
+        // Arrange
+        String insuredId = "123";
+        ReflectionTestUtils.setField(productsService, "gzipMinBytes", 1);
+        InsuredProductRow row = new InsuredProductRow(insuredId, "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        when(eventRepository.findProductRowsByInsuredId(insuredId)).thenReturn(List.of(row, row, row, row));
+        String plainEtag = productsService.getProductsByInsured(insuredId, null, false).getHeaders().getETag();
+        String gzipEtag = productsService.getProductsByInsured(insuredId, null, true).getHeaders().getETag();
+
+        // Act
+        ResponseEntity<byte[]> gzipRevalidated = productsService.getProductsByInsured(insuredId, gzipEtag, true);
+        ResponseEntity<byte[]> plainRevalidated = productsService.getProductsByInsured(insuredId, plainEtag, true);
+
+        // Assert
+        assertNotEquals(plainEtag, gzipEtag);
+        assertEquals(304, gzipRevalidated.getStatusCodeValue());
+        assertEquals(gzipEtag, gzipRevalidated.getHeaders().getETag());
+        assertEquals(304, plainRevalidated.getStatusCodeValue());
+    }
+
+    @Test
+    void testWriteProductsBatch_NdjsonInRequestOrder() throws IOException {
+        // Arrange
+        InsuredProductRow row1 = new InsuredProductRow("1", "CompanyA", "prod1", "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        InsuredProductRow row2 = new InsuredProductRow("2", "CompanyB", "prod2", "type2", BigDecimal.valueOf(200.0),
+                LocalDate.now(), LocalDate.now().plusDays(60), "event2");
+        when(eventRepository.findProductRowsByInsuredIdIn(List.of("2", "missing", "1"))).thenReturn(List.of(row1, row2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        productsService.writeProductsBatch(List.of("2", "missing", "1", "2"), true, out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("2", objectMapper.readValue(lines[0], InsuredProductsResponse.class).insuredId);
+        assertEquals("1", objectMapper.readValue(lines[1], InsuredProductsResponse.class).insuredId);
+    }
+
+    @Test
+    void testGetProductsPage_CursorPointsAtLastProductOfPage() {
+        // Arrange
+        String insuredId = "123";
+        ProductFilter filter = new ProductFilter();
+        InsuredProductRow row1 = new InsuredProductRow(insuredId, "CompanyA", PROD1, "type1", BigDecimal.valueOf(100.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event1");
+        InsuredProductRow row2 = new InsuredProductRow(insuredId, "CompanyB", PROD2, "type1", BigDecimal.valueOf(200.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event2");
+        InsuredProductRow row3 = new InsuredProductRow(insuredId, "CompanyB", PROD3, "type1", BigDecimal.valueOf(300.0),
+                LocalDate.now(), LocalDate.now().plusDays(30), "event2");
+        when(productPageRepository.findPage(insuredId, filter, null, 3)).thenReturn(List.of(row1, row2, row3));
+        when(productPageRepository.findPage(insuredId, filter, UUID.fromString(PROD2), 3)).thenReturn(List.of(row3));
+
+        // Act
+        InsuredProductsPage first = productsService.getProductsPage(insuredId, filter, null, 2).getBody();
+        InsuredProductsPage last = productsService.getProductsPage(insuredId, filter, PROD2, 2).getBody();
+
+        // Assert
+        assertNotNull(first);
+        assertEquals(PROD2, first.nextCursor);
+        assertEquals(2, first.groups.size());
+        assertNotNull(last);
+        assertNull(last.nextCursor);
+        assertEquals(PROD3, last.groups.get(0).products.get(0).id);
+    }
+
+    @Test
+    void testGetProductsPage_MalformedCursor() {
+        // Act
+        ResponseEntity<InsuredProductsPage> response = productsService.getProductsPage("123", new ProductFilter(), "prod2", 100);
+
+        // Assert
+        assertEquals(400, response.getStatusCodeValue());
+        verifyNoInteractions(productPageRepository);
+    }
+
+    @Test
+    void testGetProductsPage_UnknownInsured() {
+        // Arrange
+        when(productPageRepository.findPage("123", new ProductFilter(), null, 101)).thenReturn(List.of());
+        when(eventRepository.existsByInsuredId("123")).thenReturn(false);
+
+        // Act
+        ResponseEntity<InsuredProductsPage> response = productsService.getProductsPage("123", new ProductFilter(), null, 100);
+
+        // Assert
+        assertEquals(404, response.getStatusCodeValue());
+    }
 }
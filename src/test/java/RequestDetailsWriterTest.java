@@ -0,0 +1,129 @@
+import org.example.entities.EventEntity;
+import org.example.entities.ProductEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.service.ProcessedFileLedger;
+import org.example.service.RequestDetailsWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RequestDetailsWriterTest {
+
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private RequestDetailsWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:writer-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbc.execute("create table request_details (id varchar(255) primary key, accept_date timestamp(6), source_company varchar(255))");
+        jdbc.execute("create table event (id varchar(255) primary key, type varchar(255), insured_id varchar(255), request_id varchar(255))");
+        jdbc.execute("create table product (id uuid primary key, type varchar(255), price numeric(38,2), "
+                + "start_date date, end_date date, event_id varchar(255), insured_id varchar(255))");
+        writer = new RequestDetailsWriter(null, null, null, jdbc, mock(ProcessedFileLedger.class));
+        ReflectionTestUtils.setField(writer, "mode", "jdbc");
+        ReflectionTestUtils.setField(writer, "batchSize", 500);
+    }
+
+    @Test
+    void resubmittedUnchangedRequest_KeepsRowsAndTouchesNothing() {
+        writer.save(request("CompanyA", event("E1", "I1", "car", "100"), event("E2", "I2", "home", "250.5")));
+        List<UUID> before = productIds();
+
+        Set<String> touched = writer.save(request("CompanyA", event("E2", "I2", "home", "250.50"), event("E1", "I1", "car", "100")));
+
+        assertTrue(touched.isEmpty());
+        assertEquals(before, productIds());
+    }
+
+    @Test
+    void resubmittedChangedRequest_RewritesOnlyChangedAndRemovedEvents() {
+        writer.save(request("CompanyA", event("E1", "I1", "car", "100"), event("E2", "I2", "home", "250"),
+                event("E3", "I3", "life", "10")));
+        UUID keptProduct = jdbc.queryForObject("select id from product where event_id = 'E1'", UUID.class);
+
+        Set<String> touched = writer.save(request("CompanyA", event("E1", "I1", "car", "100"),
+                event("E2", "I2", "home", "300"), event("E4", "I4", "pet", "5")));
+
+        assertEquals(Set.of("I2", "I3", "I4"), touched);
+        assertEquals(keptProduct, jdbc.queryForObject("select id from product where event_id = 'E1'", UUID.class));
+        assertEquals(0, new BigDecimal("300").compareTo(
+                jdbc.queryForObject("select price from product where event_id = 'E2'", BigDecimal.class)));
+        assertEquals(List.of("E1", "E2", "E4"), jdbc.queryForList("select id from event order by id", String.class));
+        assertEquals(3, jdbc.queryForObject("select count(*) from product", Integer.class));
+    }
+
+    @Test
+    void resubmittedRequestWithNewSourceCompany_TouchesAllItsInsureds() {
+        writer.save(request("CompanyA", event("E1", "I1", "car", "100"), event("E2", "I2", "home", "250")));
+
+        Set<String> touched = writer.save(request("CompanyB", event("E1", "I1", "car", "100"), event("E2", "I2", "home", "250")));
+
+        assertEquals(Set.of("I1", "I2"), touched);
+        assertEquals("CompanyB", jdbc.queryForObject("select source_company from request_details", String.class));
+    }
+
+    @Test
+    void failedProductBatch_PropagatesAndRollsBackTheWholeRequest() {
+        writer.save(request("CompanyA", event("E1", "I1", "car", "100"), event("E2", "I2", "home", "250")));
+        List<UUID> before = productIds();
+        EventEntity first = event("E3", "I3", "life", "10");
+        EventEntity second = event("E4", "I4", "pet", "5");
+        // same product id twice fails the product batch after the header and events were written
+        second.getProducts().get(0).setId(first.getProducts().get(0).getId());
+
+        assertThrows(DataAccessException.class, () -> transaction.executeWithoutResult(status ->
+                writer.save(request("CompanyB", event("E1", "I1", "car", "100"), first, second))));
+
+        assertEquals("CompanyA", jdbc.queryForObject("select source_company from request_details", String.class));
+        assertEquals(List.of("E1", "E2"), jdbc.queryForList("select id from event order by id", String.class));
+        assertEquals(before, productIds());
+    }
+
+    private List<UUID> productIds() {
+        return jdbc.queryForList("select id from product order by id", UUID.class);
+    }
+
+    private static RequestDetailsEntity request(String sourceCompany, EventEntity... events) {
+        RequestDetailsEntity rd = new RequestDetailsEntity();
+        rd.setId("R1");
+        rd.setSourceCompany(sourceCompany);
+        rd.setEvents(new ArrayList<>(List.of(events)));
+        for (EventEntity e : events) {
+            e.setRequestDetails(rd);
+        }
+        return rd;
+    }
+
+    private static EventEntity event(String id, String insuredId, String productType, String price) {
+        EventEntity e = new EventEntity();
+        e.setId(id);
+        e.setType("new");
+        e.setInsuredId(insuredId);
+        ProductEntity p = new ProductEntity();
+        p.setId(UUID.randomUUID());
+        p.setType(productType);
+        p.setPrice(new BigDecimal(price));
+        p.setStartDate(LocalDate.of(2024, 1, 1));
+        p.setEvent(e);
+        e.setProducts(List.of(p));
+        return e;
+    }
+}
@@ -0,0 +1,108 @@
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.example.dto.EventDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.service.StreamingRequestReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingRequestReaderTest {
+
+    private static final String REQUEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<root><requestDetails><id>rd1</id><acceptDate>2021-05-18 13:07:38.022000000</acceptDate>"
+            + "<sourceCompany>Menora</sourceCompany></requestDetails><events>"
+            + "<event><id>e1</id><type>letter</type><insuredId>02002212</insuredId><products>"
+            + "<product><type>policy-a</type><price>2000</price><startDate>2024-05-30</startDate><endDate>2025-04-30</endDate></product>"
+            + "<product><type>policy-a</type><price>2500</price><startDate>2024-07-30</startDate><endDate>2025-06-30</endDate></product>"
+            + "</products></event>"
+            + "<event><id>e2</id><type>letter</type><insuredId>02002212</insuredId><products>"
+            + "<product><type>policy-c</type><price>3000</price><startDate>2021-07-30</startDate><endDate>2022-06-30</endDate></product>"
+            + "</products></event>"
+            + "<event><id>e3</id><type>E2</type><insuredId>03003313</insuredId><products>"
+            + "<product><type>policy-c</type><price>3500</price><startDate>2021-09-30</startDate><endDate>2022-08-30</endDate></product>"
+            + "<product><type>policy-a</type><price>1800</price><startDate>2021-08-30</startDate><endDate>2022-07-30</endDate></product>"
+            + "</products></event>"
+            + "</events></root>";
+
+    private final StreamingRequestReader reader = new StreamingRequestReader(new XmlMapper());
+
+    @Test
+    void testRead_EmitsHeaderThenEventChunks() throws IOException {
+        List<String> calls = new ArrayList<>();
+        List<EventDto> events = new ArrayList<>();
+
+        boolean found = reader.read(stream(REQUEST), 2, new StreamingRequestReader.Handler() {
+            @Override
+            public void onRequestDetails(RequestDetailsDto requestDetails) {
+                calls.add("header:" + requestDetails.getSourceCompany());
+            }
+
+            @Override
+            public void onEvents(List<EventDto> chunk) {
+                calls.add("events:" + chunk.size());
+                events.addAll(chunk);
+            }
+        });
+
+        assertTrue(found);
+        assertEquals(List.of("header:Menora", "events:2", "events:1"), calls);
+        assertEquals("e1", events.get(0).getId());
+        assertEquals("02002212", events.get(0).getInsuredId());
+        assertEquals(2, events.get(0).getProducts().size());
+        assertEquals("2000", events.get(0).getProducts().get(0).getPrice());
+        assertEquals(2, events.get(2).getProducts().size());
+    }
+
+    @Test
+    void testRead_EventsBeforeRequestDetails() {
+        String xml = "<root><events><event><id>e1</id></event></events>"
+                + "<requestDetails><id>r1</id></requestDetails></root>";
+
+        assertThrows(StreamingRequestReader.RequestDetailsNotFirstException.class, () ->
+                reader.read(stream(xml), 10, new StreamingRequestReader.Handler() {
+                    @Override
+                    public void onRequestDetails(RequestDetailsDto requestDetails) {
+                    }
+
+                    @Override
+                    public void onEvents(List<EventDto> chunk) {
+                    }
+                }));
+    }
+
+    @Test
+    void testRead_NoRequestDetails() throws IOException {
+        String xml = "<root><events></events></root>";
+
+        boolean found = reader.read(stream(xml), 10, new StreamingRequestReader.Handler() {
+            @Override
+            public void onRequestDetails(RequestDetailsDto requestDetails) {
+                fail("no requestDetails expected");
+            }
+
+            @Override
+            public void onEvents(List<EventDto> chunk) {
+                fail("no events expected");
+            }
+        });
+
+        assertFalse(found);
+    }
+
+    @Test
+    void testReadSourceCompany() throws IOException {
+        assertEquals("Menora", reader.readSourceCompany(stream(REQUEST)));
+        assertNull(reader.readSourceCompany(stream("<root><events><event><id>e1</id></event></events></root>")));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,110 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.EventDto;
+import org.example.dto.ProductDto;
+import org.example.dto.RequestDetailsDto;
+import org.example.entities.ProductEntity;
+import org.example.entities.RequestDetailsEntity;
+import org.example.entities.XmlRootRequest;
+import org.example.repository.EventRepository;
+import org.example.repository.ProductPageRepository;
+import org.example.service.IngestionMetrics;
+import org.example.service.InsuredProductsCache;
+import org.example.service.InsuredProductsProjectionService;
+import org.example.service.ProductIdGenerator;
+import org.example.service.ProductsService;
+import org.example.service.RequestDetailsService;
+import org.example.service.ValueParsers;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ValueParsersTest {
+
+    @Test
+    void parseDecimal_MatchesBigDecimal() {
+        for (String text : List.of("0", "-0.00", "10.50", "+7", ".5", "5.", "1234567890.123456789",
+                "123456789012345678", "1234567890123456789012", "1e3", "-2.5E-4", "00012.3400")) {
+            BigDecimal expected = new BigDecimal(text);
+            BigDecimal actual = ValueParsers.parseDecimal(text);
+            assertEquals(expected, actual, text);
+            assertEquals(expected.scale(), actual.scale(), text);
+        }
+        assertEquals(new BigDecimal("99.90"), ValueParsers.parseDecimal(" 99.90\n"));
+    }
+
+    @Test
+    void parseDecimal_InvalidIsNull() {
+        for (String text : new String[]{null, "", " ", "-", ".", "1,5", "1.2.3", "12a", "1e", "1e+", "1e1234567890", "NaN"}) {
+            assertNull(ValueParsers.parseDecimal(text), text);
+        }
+    }
+
+    @Test
+    void parseDate_ValidAndInvalid() {
+        assertEquals(LocalDate.of(2024, 5, 30), ValueParsers.parseDate("2024-05-30"));
+        assertEquals(LocalDate.of(2024, 2, 29), ValueParsers.parseDate("2024-02-29"));
+        assertEquals(LocalDate.of(2000, 2, 29), ValueParsers.parseDate("2000-02-29"));
+        for (String text : new String[]{null, "", "2023-02-29", "1900-02-29", "2024-13-01", "2024-04-31",
+                "2024-00-10", "2024-05-00", "30/05/2024", "2024-5-30", "2024-05-30T00:00"}) {
+            assertNull(ValueParsers.parseDate(text), text);
+        }
+    }
+
+    @Test
+    void parseDateTime_AcceptsFixedAndIsoFormats() {
+        assertEquals(LocalDateTime.of(2021, 5, 18, 13, 7, 38, 22_000_000),
+                ValueParsers.parseDateTime("2021-05-18 13:07:38.022000000"));
+        assertEquals(LocalDateTime.of(2021, 5, 18, 13, 7, 38, 22_000_000),
+                ValueParsers.parseDateTime("2021-05-18T13:07:38.022"));
+        assertEquals(LocalDateTime.of(2021, 5, 18, 13, 7, 38), ValueParsers.parseDateTime("2021-05-18T13:07:38"));
+        assertEquals(LocalDateTime.of(2021, 5, 18, 13, 7), ValueParsers.parseDateTime("2021-05-18T13:07"));
+        for (String text : new String[]{null, "", "2021-05-18", "2021-05-18 24:00:00", "2021-05-18 13:60",
+                "2021-05-18 13:07:3", "2021-05-18 13:07:38.0220000001", "2021-05-18 13:07:38,022", "18/05/2021 13:07"}) {
+            assertNull(ValueParsers.parseDateTime(text), text);
+        }
+    }
+
+    @Test
+    void mapping_CountsInvalidValuesButNotMissingOnes() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IngestionMetrics metrics = new IngestionMetrics(registry);
+        ProductsService productsService = new ProductsService(mock(EventRepository.class), mock(InsuredProductsCache.class),
+                mock(InsuredProductsProjectionService.class), new ObjectMapper(), mock(ProductPageRepository.class), metrics,
+                new ProductIdGenerator());
+        RequestDetailsService requestDetailsService = new RequestDetailsService(productsService, metrics);
+
+        RequestDetailsDto details = new RequestDetailsDto();
+        details.setId("R1");
+        details.setAcceptDate("yesterday");
+        ProductDto product = new ProductDto();
+        product.setType("Car");
+        product.setPrice("12,50");
+        product.setStartDate("2024-02-30");
+        EventDto event = new EventDto();
+        event.setId("E1");
+        event.setInsuredId("I1");
+        event.setProducts(List.of(product));
+        XmlRootRequest root = new XmlRootRequest();
+        root.setRequestDetails(details);
+        root.setEvents(List.of(event));
+
+        RequestDetailsEntity entity = requestDetailsService.getRequestDetailsEntity(root);
+
+        ProductEntity mapped = entity.getEvents().get(0).getProducts().get(0);
+        assertNull(entity.getAcceptDate());
+        assertNull(mapped.getPrice());
+        assertNull(mapped.getStartDate());
+        assertNull(mapped.getEndDate());
+        assertEquals(1.0, registry.get("ingest.invalid.values").tag("field", "accept_date").counter().count());
+        assertEquals(1.0, registry.get("ingest.invalid.values").tag("field", "price").counter().count());
+        assertEquals(1.0, registry.get("ingest.invalid.values").tag("field", "start_date").counter().count());
+        assertEquals(0.0, registry.get("ingest.invalid.values").tag("field", "end_date").counter().count());
+    }
+}